@@ -0,0 +1,88 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// A login storm on the authentication executor, with a game-like thread ticking every 10 ms next to it. The storm's
+// samples are the time per login (its inverse is the logins per second), the tick's samples above 10 ms are how late
+// the storm makes a game thread.
+@State(Scope.Group)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class AuthenticationBenchmark {
+    private static final int LOGINS = 200;
+    private static final int QUEUE_SIZE = 64;
+    private static final long TICK_MILLIS = 10;
+
+    @Param({ "10000", "100000" })
+    public int hashIterations;
+
+    @Param({ "1", "2" })
+    public int authenticationThreads;
+
+    private ThreadPoolExecutor authenticationExecutor;
+    private String credential;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Server.setHashIterations(this.hashIterations);
+        this.credential = Server.hashPassword("password");
+        this.authenticationExecutor = Server.createAuthenticationExecutor(this.authenticationThreads, QUEUE_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.authenticationExecutor.shutdown();
+    }
+
+    // The whole storm arrives at once, like the acceptors handing over a burst of logins
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(1)
+    @OperationsPerInvocation(LOGINS)
+    public void logins() throws InterruptedException {
+        CountDownLatch verifiedLogins = new CountDownLatch(LOGINS);
+        for( int i = 0; i < LOGINS; i++ ) {
+            try {
+                this.authenticationExecutor.execute(() -> {
+                    Server.verifyPassword("password", this.credential);
+                    verifiedLogins.countDown();
+                });
+            } catch(RejectedExecutionException e) {
+                // The client is told the server is busy and tries again a bit later
+                Thread.sleep(1);
+                i--;
+            }
+        }
+        verifiedLogins.await();
+    }
+
+    @Benchmark
+    @Group("storm")
+    @GroupThreads(1)
+    public void gameTick() throws InterruptedException {
+        Thread.sleep(TICK_MILLIS);
+    }
+}
@@ -0,0 +1,124 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Plays 8 player ranked games on the blocking engine against scripted sockets, counting the writes that reach each
+// socket (one syscall each on a real connection) and the bytes they carry. The score is rounds per second, the writes
+// and bytes counters divided by the rounds counter are the writes and bytes per round.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastBenchmark {
+    private static final int PLAYERS = 8;
+    private static final int ROUNDS = PLAYERS * 2;
+    // Always within the target interval (lower bound 0..48, upper bound 49..98)
+    private static final int GUESS = 49;
+
+    private final List<CountingSocket> sockets = new ArrayList<>();
+    private Object rankedGame;
+    private int nextGameIndex = 1;
+
+    // Setting up the players and the game is not measured, only playing it
+    @Setup(Level.Invocation)
+    public void createGame() {
+        this.sockets.clear();
+        List<Object> players = new ArrayList<>();
+        for( int i = 0; i < PLAYERS; i++ ) {
+            CountingSocket socket = new CountingSocket(ROUNDS);
+            this.sockets.add(socket);
+            players.add(Server.newConnectedPlayer("player" + i, socket));
+        }
+        this.rankedGame = Server.newRankedGame(players, this.nextGameIndex++);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROUNDS)
+    public void playGame(Counters counters) {
+        Server.startGame(this.rankedGame);
+        counters.rounds += ROUNDS;
+        for( CountingSocket socket: this.sockets ) {
+            counters.writes += socket.outputStream.writes;
+            counters.bytes += socket.outputStream.bytes;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long rounds;
+        public long writes;
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.rounds = 0;
+            this.writes = 0;
+            this.bytes = 0;
+        }
+    }
+
+    // Hands out one guess per round and counts what the server writes
+    private static class CountingSocket extends Socket {
+        private final InputStream inputStream;
+        private final CountingOutputStream outputStream = new CountingOutputStream();
+
+        private CountingSocket(int rounds) {
+            ByteArrayOutputStream guesses = new ByteArrayOutputStream();
+            for( int i = 1; i <= rounds; i++ ) {
+                guesses.writeBytes(Server.guess(i, GUESS));
+            }
+            this.inputStream = new ByteArrayInputStream(guesses.toByteArray());
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.inputStream;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return this.outputStream;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        private long writes = 0;
+        private long bytes = 0;
+
+        @Override
+        public void write(int b) {
+            this.writes++;
+            this.bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            this.writes++;
+            this.bytes += len;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// The leaderboard with 10k and 1M registered players: the top 10, a player's position, and the update a settled ranked
+// game makes for each of its players
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LeaderboardBenchmark {
+    @Param({ "10000", "1000000" })
+    public int registeredPlayers;
+
+    private Object leaderboard;
+    private String[] usernames;
+    private int[] rankPoints;
+    private int nextPlayer = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Elo ratings around the initial 1000
+        Random random = new Random(42);
+        this.leaderboard = Server.newLeaderboard();
+        this.usernames = new String[this.registeredPlayers];
+        this.rankPoints = new int[this.registeredPlayers];
+        for( int i = 0; i < this.registeredPlayers; i++ ) {
+            this.usernames[i] = "player" + i;
+            this.rankPoints[i] = Math.max(0, (int) (1000 + random.nextGaussian() * 200));
+            Server.addToLeaderboard(this.leaderboard, this.usernames[i], this.rankPoints[i]);
+        }
+    }
+
+    @Benchmark
+    public List<?> topPlayers() {
+        return Server.getTopPlayers(this.leaderboard, 10);
+    }
+
+    @Benchmark
+    public int position() {
+        this.nextPlayer = (this.nextPlayer + 7919) % this.registeredPlayers;
+        return Server.getPosition(this.leaderboard, this.rankPoints[this.nextPlayer]);
+    }
+
+    @Benchmark
+    public int rankedGameUpdate() {
+        // Up and down by turns, so the ratings stay where they were
+        this.nextPlayer = (this.nextPlayer + 7919) % this.registeredPlayers;
+        int previousRankPoints = this.rankPoints[this.nextPlayer];
+        this.rankPoints[this.nextPlayer] += (previousRankPoints & 1) == 0 ? 15 : -15;
+        Server.updateLeaderboard(this.leaderboard, this.usernames[this.nextPlayer], previousRankPoints, this.rankPoints[this.nextPlayer]);
+        return this.rankPoints[this.nextPlayer];
+    }
+}
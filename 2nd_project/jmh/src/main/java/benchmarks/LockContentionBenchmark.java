@@ -0,0 +1,125 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Threads requeue players the way players that choose to play again do (queue, server status, game setup), with the
+// games discarded instead of played. Each thread has its own players, connected over loopback, so the threads only
+// meet on the server's queue locks. "-t 1", "-t 16" or "-t 64" change the number of threads.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LockContentionBenchmark {
+    private static final int PLAYERS_PER_THREAD = 4;
+    // Stands in for the game thread pool, shared like the server's
+    private static final ExecutorService DISCARDING_EXECUTOR = new DiscardingExecutor();
+
+    private final List<Object> players = new ArrayList<>();
+    private final List<Socket> clientSockets = new ArrayList<>();
+    private int requeues = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0)) {
+            for( int i = 0; i < PLAYERS_PER_THREAD; i++ ) {
+                Socket clientSocket = new Socket("localhost", serverSocket.getLocalPort());
+                Object player = Server.newConnectedPlayer("player" + i, serverSocket.accept());
+                Server.setRankPoints(player, (i * 377) % 3000);
+                this.players.add(player);
+                this.clientSockets.add(clientSocket);
+                drain(clientSocket);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for( Socket clientSocket: this.clientSockets ) {
+            clientSocket.close();
+        }
+    }
+
+    @Benchmark
+    public List<?> requeue() {
+        Object player = this.players.get(this.requeues % PLAYERS_PER_THREAD);
+        // Half of the players go back to the ranked queue, half to the simple one
+        boolean isRankedGame = (this.requeues % 2) == 0;
+        this.requeues++;
+        List<?> teams;
+        if( isRankedGame ) {
+            teams = Server.addPlayerToRankedQueue(player);
+        } else {
+            Server.addPlayerToSimpleQueue(player);
+            teams = Server.setupSimpleGames();
+        }
+        Server.printServerStatus();
+        Server.startGames(DISCARDING_EXECUTOR, teams, isRankedGame);
+        return teams;
+    }
+
+    // The client side reads everything, so the queue messages never block the server side
+    private static void drain(Socket clientSocket) {
+        Thread drainer = new Thread(() -> {
+            byte[] buffer = new byte[4096];
+            try (InputStream inputStream = clientSocket.getInputStream()) {
+                //noinspection StatementWithEmptyBody
+                while( inputStream.read(buffer) >= 0 ) {
+                }
+            } catch(IOException ignored) {
+            }
+        });
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    // The games are counted by the server but never played
+    private static class DiscardingExecutor extends AbstractExecutorService {
+        @Override
+        public void execute(Runnable command) {
+        }
+        @Override
+        public void shutdown() {
+        }
+        @Override
+        public List<Runnable> shutdownNow() {
+            return new ArrayList<>();
+        }
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
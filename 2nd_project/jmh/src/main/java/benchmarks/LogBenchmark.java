@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// What logging costs the calling threads: a println to the console (a file descriptor, like a terminal or a redirected
+// log file) against handing the message to the asynchronous log, which drops or blocks while its buffer is full. Both
+// write to /dev/null through a real file descriptor, one write per line for println.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class LogBenchmark {
+    // Lets the log writer catch up before the next iteration
+    private static final long DRAIN_MILLIS = 1000;
+
+    @Param({ "println", "drop", "block" })
+    public String mode;
+
+    private PrintStream out;
+    private PrintStream err;
+
+    @Setup(Level.Trial)
+    public void setup() throws FileNotFoundException {
+        this.out = System.out;
+        this.err = System.err;
+        PrintStream devNull = new PrintStream(new FileOutputStream("/dev/null"), true);
+        System.setOut(devNull);
+        System.setErr(devNull);
+        Server.setLogLevel("INFO");
+        Server.setLogOverflowPolicy(this.mode.equals("block") ? "BLOCK" : "DROP");
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() throws InterruptedException {
+        Thread.sleep(DRAIN_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        Server.setLogLevel("ERROR");
+        Server.setLogOverflowPolicy("DROP");
+        System.setOut(this.out);
+        System.setErr(this.err);
+    }
+
+    @Benchmark
+    public void log(Caller caller) {
+        String message = "Game " + caller.gameIndex + " - Round " + caller.round++ + ": player guessed 49.";
+        if( this.mode.equals("println") ) {
+            System.out.println(message);
+        } else {
+            Server.logInfo(message);
+        }
+    }
+
+    // One per benchmark thread, standing in for a game thread
+    @State(Scope.Thread)
+    public static class Caller {
+        private static final AtomicInteger nextGameIndex = new AtomicInteger(0);
+
+        private final int gameIndex = nextGameIndex.getAndIncrement();
+        private int round = 0;
+    }
+}
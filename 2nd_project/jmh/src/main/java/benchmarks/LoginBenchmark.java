@@ -0,0 +1,78 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// A login and logout against a registry of 10k to 1M players: the password verification, the credential lookup and the
+// logged in and session maps. With a single hash iteration the maps are all that is left.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class LoginBenchmark {
+    @Param({ "10000", "100000", "1000000" })
+    public int registeredPlayers;
+
+    @Param({ "1", "100000" })
+    public int hashIterations;
+
+    private String[] usernames;
+    private Object player;
+    private int nextPlayer = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Map<String, Object> registry = Server.registeredPlayers();
+        registry.clear();
+        // Hashed once and shared, hashing a million passwords would take hours
+        Server.setHashIterations(this.hashIterations);
+        String credential = Server.hashPassword("password");
+        this.usernames = new String[this.registeredPlayers];
+        for( int i = 0; i < this.registeredPlayers; i++ ) {
+            this.usernames[i] = "player" + i;
+            registry.put(this.usernames[i], Server.newPlayer(this.usernames[i], credential, 0));
+        }
+        this.player = Server.newConnectedPlayer(new IdleSocket());
+    }
+
+    @Benchmark
+    public boolean loginLogout() {
+        // Spread over the registry, so the lookups miss the cache like real logins do
+        String username = this.usernames[this.nextPlayer];
+        this.nextPlayer = (this.nextPlayer + 7919) % this.usernames.length;
+        boolean isLoggedIn = Server.playerLogin(username, "password", this.player);
+        Server.playerLogout(this.player);
+        return isLoggedIn;
+    }
+
+    // The connecting player never reads or writes, it only needs streams to be constructed
+    private static class IdleSocket extends Socket {
+        @Override
+        public InputStream getInputStream() {
+            return InputStream.nullInputStream();
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+}
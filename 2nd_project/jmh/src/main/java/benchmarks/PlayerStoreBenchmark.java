@@ -0,0 +1,116 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Loading the players at startup and saving the rank changes of finished games, for the journal and the memory mapped
+// store, with 10k to 1M registered players
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class PlayerStoreBenchmark {
+    // Rank changes of a busy group commit
+    private static final int RANK_CHANGES_PER_BATCH = 512;
+
+    @Param({ "10000", "100000", "1000000" })
+    public int registeredPlayers;
+
+    @Param({ "journal", "mapped" })
+    public String store;
+
+    private Path directory;
+    private Object playerStore;
+    private List<Object> rankChanges;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.directory = Files.createTempDirectory("player-store-benchmark");
+        // Hashed once and shared, a plain password would be hashed at every load (and a million of them take hours)
+        String credential = Server.hashPassword("password");
+        try( BufferedWriter writer = Files.newBufferedWriter(this.file("players.csv"), StandardCharsets.UTF_8) ) {
+            for( int i = 0; i < this.registeredPlayers; i++ ) {
+                writer.write("player" + i + "," + credential + "," + (i % 3000));
+                writer.newLine();
+            }
+        }
+        // The first load of the mapped store migrates the snapshot, the measured loads read its data file
+        Map<String, Object> players = new HashMap<>();
+        Server.loadPlayers(this.createStore(), players);
+
+        this.rankChanges = new ArrayList<>(RANK_CHANGES_PER_BATCH);
+        for( int i = 0; i < RANK_CHANGES_PER_BATCH; i++ ) {
+            Object player = players.get("player" + (i * 7919L % this.registeredPlayers));
+            this.rankChanges.add(Server.newRankChange(player, i % 2 == 0 ? 25 : -25));
+        }
+    }
+
+    // A fresh store per measurement, the one that is written to is loaded first, like at server startup
+    @Setup(Level.Iteration)
+    public void openStore(BenchmarkParams params) {
+        this.playerStore = this.createStore();
+        if( params.getBenchmark().endsWith("saveRankChanges") ) {
+            Server.loadPlayers(this.playerStore, new HashMap<>());
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        try( Stream<Path> files = Files.list(this.directory) ) {
+            for( Path file: (Iterable<Path>) files::iterator ) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(this.directory);
+    }
+
+    @Benchmark
+    public Map<String, Object> load() {
+        Map<String, Object> players = new HashMap<>();
+        Server.loadPlayers(this.playerStore, players);
+        return players;
+    }
+
+    @Benchmark
+    public void saveRankChanges() {
+        Server.saveRankChanges(this.playerStore, this.rankChanges);
+    }
+
+    private Object createStore() {
+        Object journal = Server.newPlayerJournal(this.file("players.csv").toString(), this.file("players.journal").toString());
+        if( this.store.equals("journal") ) {
+            return journal;
+        }
+        return Server.newMappedPlayerStore(this.file("players.dat").toString(), this.file("players.idx").toString(), journal);
+    }
+
+    private Path file(String name) {
+        return this.directory.resolve(name);
+    }
+}
@@ -0,0 +1,62 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Encoding the messages a game sends every round, and the game start sent once per player
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProtocolBenchmark {
+    private static final int TEAM_SIZE = 8;
+
+    // Read from fields, so the encoding is not constant folded
+    private int roundNumber = 3;
+    private int lowerBound = 17;
+    private int upperBound = 81;
+    private int guess = 49;
+    private List<Object> players;
+
+    @Setup
+    public void setup() {
+        this.players = new ArrayList<>(TEAM_SIZE);
+        for( int i = 0; i < TEAM_SIZE; i++ ) {
+            this.players.add(Server.newPlayer("player" + i, "password", 0));
+        }
+    }
+
+    @Benchmark
+    public byte[] roundStart() {
+        return Server.roundStart(this.roundNumber, this.lowerBound, this.upperBound);
+    }
+
+    @Benchmark
+    public byte[] turn() {
+        return Server.turn(this.roundNumber);
+    }
+
+    @Benchmark
+    public byte[] roundResult() {
+        return Server.roundResult(this.roundNumber, this.guess + 2, 0, this.guess, 2);
+    }
+
+    @Benchmark
+    public byte[] gameStart() {
+        return Server.gameStart(true, TEAM_SIZE * 2, this.players, this.roundNumber);
+    }
+}
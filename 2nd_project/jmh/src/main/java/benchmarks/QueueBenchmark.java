@@ -0,0 +1,86 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Matchmaking: splitting the simple game queue into teams, and the ranked queue (a rating-ordered skip list) with 8 to
+// 100k players waiting in it: an arrival that may complete a team with its nearest opponents, and looking up a player's
+// nearest opponents
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+    // The waiting players are rated this far apart, further than the matchmaking window, so they never match each other
+    private static final int RATING_SPACING = 1000;
+    private static final int ARRIVING_TEAMS = 1024;
+
+    @Param({ "8", "512", "100000" })
+    public int queueSize;
+
+    private List<Object> players;
+    private List<Object> arrivingPlayers;
+    private Object rankedMatchmaking;
+    private int nextPlayer = 0;
+
+    @Setup
+    public void setup() {
+        // The server's team sizes
+        this.rankedMatchmaking = Server.newRankedMatchmaking(3, 8);
+        this.players = new ArrayList<>(this.queueSize);
+        for( int i = 0; i < this.queueSize; i++ ) {
+            Object player = Server.newPlayer("player" + i, "password", 0);
+            Server.setRankPoints(player, i * RATING_SPACING);
+            this.players.add(player);
+            Server.addRankedPlayer(this.rankedMatchmaking, player);
+        }
+        // Three arrivals rated between two waiting players make a team, spread over the whole queue
+        Random random = new Random(42);
+        this.arrivingPlayers = new ArrayList<>(ARRIVING_TEAMS * 3);
+        for( int i = 0; i < ARRIVING_TEAMS; i++ ) {
+            int rankPoints = random.nextInt(this.queueSize) * RATING_SPACING + RATING_SPACING / 2;
+            for( int j = 0; j < 3; j++ ) {
+                Object player = Server.newPlayer("arriving" + (i * 3 + j), "password", 0);
+                Server.setRankPoints(player, rankPoints + j);
+                this.arrivingPlayers.add(player);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<?> splitQueueIntoTeams() {
+        // The split empties the queue it is given
+        return Server.splitQueueIntoTeams(new ArrayList<>(this.players));
+    }
+
+    @Benchmark
+    public List<?> rankedArrival() {
+        // Every third arrival completes a team and takes the other two out of the queue
+        Object player = this.arrivingPlayers.get(this.nextPlayer);
+        this.nextPlayer = (this.nextPlayer + 1) % this.arrivingPlayers.size();
+        return Server.addRankedPlayer(this.rankedMatchmaking, player);
+    }
+
+    @Benchmark
+    public List<?> nearestOpponents() {
+        Object player = this.arrivingPlayers.get(this.nextPlayer);
+        this.nextPlayer = (this.nextPlayer + 3) % this.arrivingPlayers.size();
+        return Server.findNearestOpponents(this.rankedMatchmaking, player, 7);
+    }
+}
@@ -0,0 +1,128 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+// Every benchmark thread is a client that connects, logs in and disconnects over and over, like the clients of a
+// restarted server all coming back at once. The server is a real GameServer in its own process (in a temporary folder,
+// its players.csv is thrown away after the run) with 1 or 4 acceptors. The samples are the login latencies, the logins
+// per second are the number of threads divided by their mean. "-t 200" makes a bigger storm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(64)
+public class ReconnectStormBenchmark {
+    private static final String HOSTNAME = "localhost";
+    private static final int PORT = 5000;
+    private static final String PASSWORD = "storm";
+    private static final long SERVER_START_MILLIS = 10_000;
+
+    @Param({ "1", "4" })
+    public int acceptors;
+
+    // The server's default is 100000, where the hashing alone allows about 27 logins per second and core
+    @Param({ "1000" })
+    public int hashIterations;
+
+    private Path directory;
+    private Process server;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException, InterruptedException {
+        this.directory = Files.createTempDirectory("reconnect-storm");
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        this.server = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), "GameServer",
+                "--acceptors=" + this.acceptors, "--hash-iterations=" + this.hashIterations, "--max-players=100000",
+                "--metrics-port=0", "--log-level=error")
+                .directory(this.directory.toFile())
+                .redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .start();
+
+        long deadline = System.currentTimeMillis() + SERVER_START_MILLIS;
+        while( true ) {
+            try (Socket ignored = new Socket(HOSTNAME, PORT)) {
+                return;
+            } catch(IOException e) {
+                if( System.currentTimeMillis() > deadline || !this.server.isAlive() ) {
+                    throw new IOException("The server did not start.", e);
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopServer() throws IOException, InterruptedException {
+        this.server.destroy();
+        this.server.waitFor();
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public int login(Client client) throws IOException {
+        int status = authenticate(1, client.username);
+        if( status != Server.LOGIN_SUCCESSFUL ) {
+            throw new IllegalStateException("Login of " + client.username + " failed with status " + status + ".");
+        }
+        return status;
+    }
+
+    // Connects, sends the authentication choice (1 login, 2 register) and credentials, returns the server's status. The
+    // connection is closed right after, which logs the player out.
+    private static int authenticate(int choice, String username) throws IOException {
+        try (Socket socket = new Socket(HOSTNAME, PORT)) {
+            DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+            DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+            outputStream.write(Server.authenticate(choice, username, PASSWORD));
+            return Server.readAuthenticationResult(inputStream);
+        }
+    }
+
+    // One per benchmark thread, registered once the server runs
+    @State(Scope.Thread)
+    public static class Client {
+        private static final AtomicInteger nextClient = new AtomicInteger(0);
+
+        private String username;
+
+        @Setup(Level.Trial)
+        public void register(ReconnectStormBenchmark benchmark) throws IOException {
+            this.username = "storm" + nextClient.getAndIncrement();
+            int status = authenticate(2, this.username);
+            if( status != Server.REGISTRATION_SUCCESSFUL ) {
+                throw new IllegalStateException("Registration of " + this.username + " failed with status " + status + ".");
+            }
+        }
+    }
+}
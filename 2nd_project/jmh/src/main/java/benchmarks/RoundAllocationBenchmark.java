@@ -0,0 +1,121 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Plays ranked games of 2, 4 and 8 players on the blocking engine against scripted sockets and counts the bytes the
+// game thread allocates while playing them. Setting up the players and the game is not counted, only start(), which
+// "-prof gc" cannot tell apart. The allocatedBytes counter divided by the rounds counter is the garbage per round.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoundAllocationBenchmark {
+    // Always within the target interval (lower bound 0..48, upper bound 49..98)
+    private static final int GUESS = 49;
+
+    @Param({ "2", "4", "8" })
+    public int teamSize;
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private PrintStream out;
+    private PrintStream err;
+    private Object rankedGame;
+    private int nextGameIndex = 1;
+
+    // Game output is discarded, the benchmark measures the game and not the terminal
+    @Setup(Level.Trial)
+    public void setup() {
+        this.out = System.out;
+        this.err = System.err;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(this.out);
+        System.setErr(this.err);
+    }
+
+    @Setup(Level.Invocation)
+    public void createGame() {
+        int rounds = this.teamSize * 2;
+        List<Object> players = new ArrayList<>();
+        for( int i = 0; i < this.teamSize; i++ ) {
+            players.add(Server.newConnectedPlayer("player" + i, new ScriptedSocket(rounds)));
+        }
+        this.rankedGame = Server.newRankedGame(players, this.nextGameIndex++);
+    }
+
+    @Benchmark
+    public void playGame(Counters counters) {
+        long threadId = Thread.currentThread().getId();
+        long before = this.threads.getThreadAllocatedBytes(threadId);
+        Server.startGame(this.rankedGame);
+        counters.allocatedBytes += this.threads.getThreadAllocatedBytes(threadId) - before;
+        counters.rounds += this.teamSize * 2;
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long rounds;
+        public long allocatedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.rounds = 0;
+            this.allocatedBytes = 0;
+        }
+    }
+
+    // Hands out one guess per round and discards what the server writes
+    private static class ScriptedSocket extends Socket {
+        private final InputStream inputStream;
+
+        private ScriptedSocket(int rounds) {
+            ByteArrayOutputStream guesses = new ByteArrayOutputStream();
+            for( int i = 1; i <= rounds; i++ ) {
+                guesses.writeBytes(Server.guess(i, GUESS));
+            }
+            this.inputStream = new ByteArrayInputStream(guesses.toByteArray());
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return this.inputStream;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return OutputStream.nullOutputStream();
+        }
+    }
+}
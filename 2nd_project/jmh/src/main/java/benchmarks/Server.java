@@ -0,0 +1,569 @@
+package benchmarks;
+
+import java.io.DataInputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.Socket;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+
+// The server classes are in the default package, which a named package cannot import, and JMH does not take benchmarks
+// from the default package. The benchmarks reach the server through these method handles, looked up once. Being static
+// final, the JIT inlines the calls through them like direct calls.
+final class Server {
+    static final Class<?> PLAYER = load("Player");
+    static final Class<?> GAME_SERVER = load("GameServer");
+    static final Class<?> PROTOCOL = load("Protocol");
+    static final Class<?> PLAYER_STORE = load("PlayerStore");
+    static final Class<?> SESSION_TOKENS = load("SessionTokens");
+    static final Class<?> LEADERBOARD = load("Leaderboard");
+
+    // Player(String username, String password, int rankPoints), a registered player
+    private static final MethodHandle NEW_PLAYER = constructor(PLAYER, String.class, String.class, int.class);
+    // Player(String username, String password, Socket socket), a connecting player
+    private static final MethodHandle NEW_CONNECTED_PLAYER = constructor(PLAYER, String.class, String.class, Socket.class);
+    private static final MethodHandle SET_RANK_POINTS = method(PLAYER, "setRankPoints", int.class);
+
+    private static final MethodHandle SPLIT_QUEUE_INTO_TEAMS = method(GAME_SERVER, "splitQueueIntoTeams", List.class);
+    private static final MethodHandle PLAYER_LOGIN = method(GAME_SERVER, "playerLogin", String.class, String.class, PLAYER);
+    private static final MethodHandle PLAYER_LOGOUT = method(GAME_SERVER, "playerLogout", PLAYER);
+    private static final MethodHandle CREATE_AUTHENTICATION_EXECUTOR = method(GAME_SERVER, "createAuthenticationExecutor", int.class, int.class);
+    private static final MethodHandle ADD_PLAYER_TO_SIMPLE_QUEUE = method(GAME_SERVER, "addPlayerToSimpleQueue", PLAYER);
+    private static final MethodHandle ADD_PLAYER_TO_RANKED_QUEUE = method(GAME_SERVER, "addPlayerToRankedQueue", PLAYER);
+    private static final MethodHandle SETUP_SIMPLE_GAMES = method(GAME_SERVER, "setupSimpleGames");
+    private static final MethodHandle PRINT_SERVER_STATUS = method(GAME_SERVER, "printServerStatus");
+    private static final MethodHandle START_GAMES = method(GAME_SERVER, "startGames", ExecutorService.class, List.class, boolean.class);
+    private static final Map<String, Object> REGISTERED_PLAYERS = staticField(GAME_SERVER, "registeredPlayers");
+
+    // RankedMatchmakingRunnable(int minTeamSize, int maxTeamSize)
+    private static final MethodHandle NEW_RANKED_MATCHMAKING = constructor(load("RankedMatchmakingRunnable"), int.class, int.class);
+    private static final MethodHandle ADD_RANKED_PLAYER = method(load("RankedMatchmakingRunnable"), "addPlayer", PLAYER);
+    private static final MethodHandle FIND_NEAREST_OPPONENTS = method(load("RankedMatchmakingRunnable"), "findNearestOpponents", PLAYER, int.class);
+
+    private static final MethodHandle ROUND_START = method(PROTOCOL, "roundStart", int.class, int.class, int.class);
+    private static final MethodHandle ROUND_RESULT = method(PROTOCOL, "roundResult", int.class, int.class, int.class, int.class, int.class);
+    private static final MethodHandle TURN = method(PROTOCOL, "turn", int.class);
+    private static final MethodHandle GAME_START = method(PROTOCOL, "gameStart", boolean.class, int.class, List.class, int.class);
+    private static final MethodHandle AUTHENTICATE = method(PROTOCOL, "authenticate", int.class, String.class, String.class);
+    private static final MethodHandle GUESS = method(PROTOCOL, "guess", int.class, int.class);
+    private static final MethodHandle READ_FRAME = method(PROTOCOL, "readFrame", DataInputStream.class, byte.class);
+    private static final MethodHandle READ_BYTE = method(load("Frame"), "readByte");
+    private static final byte AUTHENTICATION_RESULT = staticField(PROTOCOL, "AUTHENTICATION_RESULT");
+    static final byte LOGIN_SUCCESSFUL = staticField(PROTOCOL, "LOGIN_SUCCESSFUL");
+    static final byte REGISTRATION_SUCCESSFUL = staticField(PROTOCOL, "REGISTRATION_SUCCESSFUL");
+
+    private static final Class<?> PLAYER_JOURNAL = load("PlayerJournal");
+    private static final MethodHandle NEW_PLAYER_JOURNAL = constructor(PLAYER_JOURNAL, String.class, String.class);
+    private static final MethodHandle NEW_MAPPED_PLAYER_STORE = constructor(load("MappedPlayerStore"), String.class, String.class, PLAYER_JOURNAL);
+    private static final MethodHandle LOAD_PLAYERS = method(PLAYER_STORE, "load", Map.class);
+    private static final MethodHandle SAVE_RANK_CHANGES = method(PLAYER_STORE, "saveRankChanges", List.class);
+    private static final MethodHandle NEW_RANK_CHANGE = constructor(load("RankChange"), PLAYER, int.class);
+
+    // RankedGame(List<Player> players, int gameIndex), played on the calling thread by start() (blocking engine)
+    private static final MethodHandle NEW_RANKED_GAME = constructor(load("RankedGame"), List.class, int.class);
+    private static final MethodHandle START_GAME = method(load("Game"), "start");
+
+    // TimerWheelRunnable(long tickMillis, int wheelSize), runs on a thread of its own
+    private static final Class<?> TIMER_WHEEL = load("TimerWheelRunnable");
+    private static final MethodHandle NEW_TIMER_WHEEL = constructor(TIMER_WHEEL, long.class, int.class);
+    private static final MethodHandle SCHEDULE_TIMEOUT = method(TIMER_WHEEL, "schedule", long.class, Runnable.class);
+    private static final MethodHandle REQUEST_TIMER_WHEEL_STOP = method(TIMER_WHEEL, "requestStop");
+    private static final MethodHandle CANCEL_TIMEOUT = method(load("Timeout"), "cancel");
+
+    // SessionTokens(long timeoutNanos)
+    private static final MethodHandle NEW_SESSION_TOKENS = constructor(SESSION_TOKENS, long.class);
+    private static final MethodHandle GENERATE_TOKEN = method(SESSION_TOKENS, "generate");
+    private static final MethodHandle ISSUE_TOKEN = method(SESSION_TOKENS, "issue", PLAYER);
+    private static final MethodHandle FIND_SESSION = method(SESSION_TOKENS, "find", String.class);
+    private static final MethodHandle REVOKE_TOKEN = method(SESSION_TOKENS, "revoke", PLAYER);
+
+    private static final MethodHandle NEW_LEADERBOARD = constructor(LEADERBOARD);
+    private static final MethodHandle LEADERBOARD_ADD = method(LEADERBOARD, "add", String.class, int.class);
+    private static final MethodHandle LEADERBOARD_UPDATE = method(LEADERBOARD, "update", String.class, int.class, int.class);
+    private static final MethodHandle GET_POSITION = method(LEADERBOARD, "getPosition", int.class);
+    private static final MethodHandle GET_TOP_PLAYERS = method(LEADERBOARD, "getTopPlayers", int.class);
+
+    private static final MethodHandle HASH_PASSWORD = method(load("PasswordHasher"), "hash", String.class);
+    private static final MethodHandle VERIFY_PASSWORD = method(load("PasswordHasher"), "verify", String.class, String.class);
+    private static final MethodHandle SET_HASH_ITERATIONS = method(load("PasswordHasher"), "setIterations", int.class);
+
+    private static final Class<?> LOG_LEVEL = load("Log$Level");
+    private static final Class<?> LOG_OVERFLOW_POLICY = load("Log$OverflowPolicy");
+    private static final MethodHandle LOG_INFO = method(load("Log"), "info", String.class);
+    private static final MethodHandle SET_LOG_LEVEL = method(load("Log"), "setLevel", LOG_LEVEL);
+    private static final MethodHandle SET_LOG_OVERFLOW_POLICY = method(load("Log"), "setOverflowPolicy", LOG_OVERFLOW_POLICY);
+
+    static {
+        // The server logs every login, the benchmarks only keep its errors
+        setLogLevel("ERROR");
+    }
+
+    private Server() {
+    }
+
+    static Object newPlayer(String username, String password, int rankPoints) {
+        try {
+            return NEW_PLAYER.invoke(username, password, rankPoints);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newLeaderboard() {
+        try {
+            return NEW_LEADERBOARD.invoke();
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void addToLeaderboard(Object leaderboard, String username, int rankPoints) {
+        try {
+            LEADERBOARD_ADD.invoke(leaderboard, username, rankPoints);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void updateLeaderboard(Object leaderboard, String username, int previousRankPoints, int rankPoints) {
+        try {
+            LEADERBOARD_UPDATE.invoke(leaderboard, username, previousRankPoints, rankPoints);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int getPosition(Object leaderboard, int rankPoints) {
+        try {
+            return (int) GET_POSITION.invoke(leaderboard, rankPoints);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> getTopPlayers(Object leaderboard, int count) {
+        try {
+            return (List<?>) GET_TOP_PLAYERS.invoke(leaderboard, count);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newRankedGame(List<Object> players, int gameIndex) {
+        try {
+            return NEW_RANKED_GAME.invoke(players, gameIndex);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void startGame(Object game) {
+        try {
+            START_GAME.invoke(game);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Runnable newTimerWheel(long tickMillis, int wheelSize) {
+        try {
+            return (Runnable) NEW_TIMER_WHEEL.invoke(tickMillis, wheelSize);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object scheduleTimeout(Runnable timerWheel, long delayMillis, Runnable task) {
+        try {
+            return SCHEDULE_TIMEOUT.invoke((Object) timerWheel, delayMillis, task);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void requestTimerWheelStop(Runnable timerWheel) {
+        try {
+            REQUEST_TIMER_WHEEL_STOP.invoke((Object) timerWheel);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean cancelTimeout(Object timeout) {
+        try {
+            return (boolean) CANCEL_TIMEOUT.invoke(timeout);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newSessionTokens(long timeoutNanos) {
+        try {
+            return NEW_SESSION_TOKENS.invoke(timeoutNanos);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String generateToken() {
+        try {
+            return (String) GENERATE_TOKEN.invoke();
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String issueToken(Object sessionTokens, Object player) {
+        try {
+            return (String) ISSUE_TOKEN.invoke(sessionTokens, player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object findSession(Object sessionTokens, String token) {
+        try {
+            return FIND_SESSION.invoke(sessionTokens, token);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void revokeToken(Object sessionTokens, Object player) {
+        try {
+            REVOKE_TOKEN.invoke(sessionTokens, player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newConnectedPlayer(Socket socket) {
+        return newConnectedPlayer(null, socket);
+    }
+
+    static Object newConnectedPlayer(String username, Socket socket) {
+        try {
+            return NEW_CONNECTED_PLAYER.invoke(username, (String) null, socket);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void setRankPoints(Object player, int rankPoints) {
+        try {
+            SET_RANK_POINTS.invoke(player, rankPoints);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> splitQueueIntoTeams(List<Object> queue) {
+        try {
+            return (List<?>) SPLIT_QUEUE_INTO_TEAMS.invoke(queue);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean playerLogin(String username, String password, Object player) {
+        try {
+            return (boolean) PLAYER_LOGIN.invoke(username, password, player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void playerLogout(Object player) {
+        try {
+            PLAYER_LOGOUT.invoke(player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void addPlayerToSimpleQueue(Object player) {
+        try {
+            ADD_PLAYER_TO_SIMPLE_QUEUE.invoke(player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> addPlayerToRankedQueue(Object player) {
+        try {
+            return (List<?>) ADD_PLAYER_TO_RANKED_QUEUE.invoke(player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> setupSimpleGames() {
+        try {
+            return (List<?>) SETUP_SIMPLE_GAMES.invoke();
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void printServerStatus() {
+        try {
+            PRINT_SERVER_STATUS.invoke();
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // The games of the teams are handed to the executor, or to the event loops with the event engine
+    static void startGames(ExecutorService gameThreadPool, List<?> teams, boolean isRankedGame) {
+        try {
+            START_GAMES.invoke(gameThreadPool, teams, isRankedGame);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // The server's own registry, filled directly instead of registering every player through the store
+    static Map<String, Object> registeredPlayers() {
+        return REGISTERED_PLAYERS;
+    }
+
+    static Object newRankedMatchmaking(int minTeamSize, int maxTeamSize) {
+        try {
+            return NEW_RANKED_MATCHMAKING.invoke(minTeamSize, maxTeamSize);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> addRankedPlayer(Object rankedMatchmaking, Object player) {
+        try {
+            return (List<?>) ADD_RANKED_PLAYER.invoke(rankedMatchmaking, player);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static List<?> findNearestOpponents(Object rankedMatchmaking, Object player, int count) {
+        try {
+            return (List<?>) FIND_NEAREST_OPPONENTS.invoke(rankedMatchmaking, player, count);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static byte[] roundStart(int roundNumber, int lowerBound, int upperBound) {
+        try {
+            return (byte[]) ROUND_START.invoke(roundNumber, lowerBound, upperBound);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static byte[] roundResult(int roundNumber, int targetNumber, int roundWinnerIndex, int guess, int distance) {
+        try {
+            return (byte[]) ROUND_RESULT.invoke(roundNumber, targetNumber, roundWinnerIndex, guess, distance);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static byte[] turn(int playerIndex) {
+        try {
+            return (byte[]) TURN.invoke(playerIndex);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static byte[] gameStart(boolean isRanked, int numberOfRounds, List<Object> players, int playerIndex) {
+        try {
+            return (byte[]) GAME_START.invoke(isRanked, numberOfRounds, players, playerIndex);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static byte[] guess(int roundNumber, int guess) {
+        try {
+            return (byte[]) GUESS.invoke(roundNumber, guess);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static byte[] authenticate(int choice, String username, String password) {
+        try {
+            return (byte[]) AUTHENTICATE.invoke(choice, username, password);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Waits for the server's answer to an authentication and returns its status
+    static int readAuthenticationResult(DataInputStream inputStream) {
+        try {
+            return (byte) READ_BYTE.invoke(READ_FRAME.invoke(inputStream, AUTHENTICATION_RESULT));
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newPlayerJournal(String snapshotFile, String journalFile) {
+        try {
+            return NEW_PLAYER_JOURNAL.invoke(snapshotFile, journalFile);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newMappedPlayerStore(String dataFile, String indexFile, Object legacyJournal) {
+        try {
+            return NEW_MAPPED_PLAYER_STORE.invoke(dataFile, indexFile, legacyJournal);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void loadPlayers(Object playerStore, Map<String, Object> players) {
+        try {
+            LOAD_PLAYERS.invoke(playerStore, players);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void saveRankChanges(Object playerStore, List<Object> rankChanges) {
+        try {
+            SAVE_RANK_CHANGES.invoke(playerStore, rankChanges);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object newRankChange(Object player, int rankDelta) {
+        try {
+            return NEW_RANK_CHANGE.invoke(player, rankDelta);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static String hashPassword(String password) {
+        try {
+            return (String) HASH_PASSWORD.invoke(password);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static boolean verifyPassword(String password, String credential) {
+        try {
+            return (boolean) VERIFY_PASSWORD.invoke(password, credential);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static ThreadPoolExecutor createAuthenticationExecutor(int numberOfThreads, int queueSize) {
+        try {
+            return (ThreadPoolExecutor) CREATE_AUTHENTICATION_EXECUTOR.invoke(numberOfThreads, queueSize);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void setHashIterations(int iterations) {
+        try {
+            SET_HASH_ITERATIONS.invoke(iterations);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void logInfo(String message) {
+        try {
+            LOG_INFO.invoke(message);
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Takes the name of a Log.Level constant
+    static void setLogLevel(String level) {
+        try {
+            SET_LOG_LEVEL.invoke(enumConstant(LOG_LEVEL, level));
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    // Takes the name of a Log.OverflowPolicy constant
+    static void setLogOverflowPolicy(String overflowPolicy) {
+        try {
+            SET_LOG_OVERFLOW_POLICY.invoke(enumConstant(LOG_OVERFLOW_POLICY, overflowPolicy));
+        } catch(Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch(ClassNotFoundException e) {
+            throw new IllegalStateException("Server class " + name + " is not on the classpath.", e);
+        }
+    }
+
+    // Works for the private and protected members too, the server is on the class path (unnamed module)
+    private static MethodHandle method(Class<?> owner, String name, Class<?>... parameterTypes) {
+        try {
+            Method method = owner.getDeclaredMethod(name, parameterTypes);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Server method " + owner.getName() + "." + name + " not found.", e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameterTypes) {
+        try {
+            Constructor<?> constructor = owner.getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return MethodHandles.lookup().unreflectConstructor(constructor).asType(MethodType.methodType(Object.class, parameterTypes));
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Server constructor of " + owner.getName() + " not found.", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T staticField(Class<?> owner, String name) {
+        try {
+            Field field = owner.getDeclaredField(name);
+            field.setAccessible(true);
+            return (T) field.get(null);
+        } catch(ReflectiveOperationException e) {
+            throw new IllegalStateException("Server field " + owner.getName() + "." + name + " not found.", e);
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static Object enumConstant(Class<?> enumClass, String name) {
+        return Enum.valueOf((Class<? extends Enum>) enumClass, name);
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if( e instanceof RuntimeException ) {
+            return (RuntimeException) e;
+        }
+        if( e instanceof Error ) {
+            throw (Error) e;
+        }
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Schedules turn-like timeouts (1 to 60 seconds) and cancels 9 out of 10 of them, the way answered turns cancel their
+// deadline, on the server's timer wheel and on a ScheduledThreadPoolExecutor (remove on cancel). Every invocation
+// schedules, or cancels, all the timeouts of a fresh scheduler: the score divided by their number is the time per
+// timeout.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class TimerWheelBenchmark {
+    private static final long MAX_DELAY_MILLIS = 60_000;
+    private static final Runnable TASK = () -> {};
+
+    @Param({ "100000", "1000000" })
+    public int pendingTimeouts;
+
+    @Param({ "wheel", "pool" })
+    public String scheduler;
+
+    private long[] delays;
+    private Runnable timerWheel;
+    private Thread timerWheelThread;
+    private ScheduledThreadPoolExecutor executor;
+    private List<Object> timeouts;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.delays = new long[this.pendingTimeouts];
+        Random random = new Random(42);
+        for( int i = 0; i < this.pendingTimeouts; i++ ) {
+            this.delays[i] = 1000 + (long) (random.nextDouble() * (MAX_DELAY_MILLIS - 1000));
+        }
+    }
+
+    // The server's wheel: 100 ms ticks, 512 buckets
+    @Setup(Level.Iteration)
+    public void startScheduler(BenchmarkParams params) {
+        if( this.scheduler.equals("wheel") ) {
+            this.timerWheel = Server.newTimerWheel(100, 512);
+            this.timerWheelThread = new Thread(this.timerWheel, "Timer Wheel Thread");
+            this.timerWheelThread.start();
+        } else {
+            this.executor = new ScheduledThreadPoolExecutor(1);
+            this.executor.setRemoveOnCancelPolicy(true);
+        }
+        this.timeouts = new ArrayList<>(this.pendingTimeouts);
+        if( params.getBenchmark().endsWith("cancel") ) {
+            this.schedule();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void stopScheduler() throws InterruptedException {
+        if( this.scheduler.equals("wheel") ) {
+            Server.requestTimerWheelStop(this.timerWheel);
+            this.timerWheelThread.interrupt();
+            this.timerWheelThread.join();
+        } else {
+            this.executor.shutdownNow();
+        }
+    }
+
+    @Benchmark
+    public List<Object> schedule() {
+        boolean isTimerWheel = this.scheduler.equals("wheel");
+        for( long delay: this.delays ) {
+            if( isTimerWheel ) {
+                this.timeouts.add(Server.scheduleTimeout(this.timerWheel, delay, TASK));
+            } else {
+                this.timeouts.add(this.executor.schedule(TASK, delay, TimeUnit.MILLISECONDS));
+            }
+        }
+        return this.timeouts;
+    }
+
+    @Benchmark
+    public int cancel() {
+        boolean isTimerWheel = this.scheduler.equals("wheel");
+        int cancelled = 0;
+        for( int i = 0; i < this.timeouts.size(); i++ ) {
+            if( i % 10 == 0 ) {
+                continue;
+            }
+            if( isTimerWheel ) {
+                Server.cancelTimeout(this.timeouts.get(i));
+            } else {
+                ((ScheduledFuture<?>) this.timeouts.get(i)).cancel(false);
+            }
+            cancelled++;
+        }
+        return cancelled;
+    }
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Session tokens: generating one (once per authenticated connection), issuing and revoking one in the token -> session
+// index, and looking a session up by its token (once per resumed connection), with 1k to 100k sessions in the index
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenBenchmark {
+    @Param({ "1000", "100000" })
+    public int sessions;
+
+    private Object sessionTokens;
+    private String[] tokens;
+    private Object player;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // Never expires, the sessions are never heard from
+        this.sessionTokens = Server.newSessionTokens(Long.MAX_VALUE);
+        this.tokens = new String[this.sessions];
+        for( int i = 0; i < this.sessions; i++ ) {
+            this.tokens[i] = Server.issueToken(this.sessionTokens, Server.newPlayer("player" + i, "password", 0));
+        }
+        this.player = Server.newPlayer("player", "password", 0);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return Server.generateToken();
+    }
+
+    // Connections authenticating at the same time
+    @Benchmark
+    @Threads(4)
+    public String generateTokenContended() {
+        return Server.generateToken();
+    }
+
+    @Benchmark
+    public String issueRevokeToken() {
+        String token = Server.issueToken(this.sessionTokens, this.player);
+        Server.revokeToken(this.sessionTokens, this.player);
+        return token;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object findSession() {
+        return Server.findSession(this.sessionTokens, this.tokens[ThreadLocalRandom.current().nextInt(this.tokens.length)]);
+    }
+}
@@ -0,0 +1,185 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.concurrent.ThreadLocalRandom;
+
+// A simulated player: it speaks the same protocol as GameClient, with its choices made by a strategy and paced by a
+// think time instead of a person at a terminal. It plays until the load generator stops, logging in again whenever it
+// chose to disconnect or lost its connection.
+public class BotClient implements Runnable {
+    public enum Strategy {
+        RANDOM,     // Any number of the target interval
+        MIDDLE,     // The middle of the target interval
+        SLOPPY,     // A number outside the interval first, then a random one once it is rejected
+        IDLE        // Never guesses, every turn waits for the server's deadline
+    }
+
+    private static final String PASSWORD = "bot";
+
+    private final LoadGenerator loadGenerator;
+    private final String username;
+    private final Strategy strategy;
+    // Replaced on every new connection, the heartbeat thread and the load generator read them
+    private volatile Socket socket = null;
+    private volatile DataOutputStream outputStream = null;
+    private DataInputStream inputStream = null;
+
+    public BotClient(LoadGenerator loadGenerator, String username, Strategy strategy) {
+        this.loadGenerator = loadGenerator;
+        this.username = username;
+        this.strategy = strategy;
+    }
+
+    @Override
+    public void run() {
+        while( !this.loadGenerator.getIsStopRequested() ) {
+            try {
+                this.connect();
+                this.authenticate();
+                boolean isPlayingAgain;
+                do {
+                    this.playGame();
+                    isPlayingAgain = ThreadLocalRandom.current().nextDouble() < this.loadGenerator.getPlayAgainShare();
+                    this.think();
+                    this.outputStream.write(Protocol.afterGame(isPlayingAgain ? 1 : 2));
+                } while( isPlayingAgain && !this.loadGenerator.getIsStopRequested() );
+            } catch(IOException e) {
+                // Stopping closes the sockets, that is not a failure
+                if( !this.loadGenerator.getIsStopRequested() ) {
+                    this.loadGenerator.reportFailure(this.username + ": " + e.getMessage());
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                this.disconnect();
+            }
+
+            try {
+                // Comes back after a while, like a player that logged off
+                this.think();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Called by the load generator's heartbeat thread for connected bots, a failed write is noticed by the bot's next read
+    public void ping() {
+        try {
+            // DataOutputStream writes are synchronized, so a heartbeat never splits another message
+            this.outputStream.write(Protocol.ping());
+        } catch(IOException ignored) {
+        }
+    }
+
+    // Also called by the load generator when it stops, a read or write of the bot then fails
+    public void disconnect() {
+        Socket socket = this.socket;
+        if( socket != null ) {
+            try {
+                socket.close();
+            } catch(IOException ignored) {
+            }
+        }
+        this.loadGenerator.removeConnectedBot(this);
+    }
+
+    private void connect() throws IOException {
+        Socket socket = new Socket(this.loadGenerator.getHostname(), this.loadGenerator.getPort());
+        socket.setTcpNoDelay(true);
+        this.socket = socket;
+        this.inputStream = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.outputStream = new DataOutputStream(socket.getOutputStream());
+        this.loadGenerator.addConnectedBot(this);
+    }
+
+    // Registers the first time, logs in afterwards
+    private void authenticate() throws IOException {
+        long start = System.nanoTime();
+        byte status = this.sendCredentials(2);
+        if( status == Protocol.USERNAME_TAKEN ) {
+            status = this.sendCredentials(1);
+        }
+        if( status != Protocol.LOGIN_SUCCESSFUL && status != Protocol.REGISTRATION_SUCCESSFUL ) {
+            // The previous session may still be logged in, until the server evicts it
+            throw new IOException("Authentication failed with status " + status + ".");
+        }
+        this.loadGenerator.getLoginLatency().recordSince(start);
+    }
+
+    private byte sendCredentials(int choice) throws IOException {
+        this.outputStream.write(Protocol.authenticate(choice, this.username, PASSWORD));
+        return Protocol.readFrame(this.inputStream, Protocol.AUTHENTICATION_RESULT).readByte();
+    }
+
+    // From the game type selection to the end of the game
+    private void playGame() throws IOException, InterruptedException {
+        this.think();
+        boolean isRanked = ThreadLocalRandom.current().nextDouble() < this.loadGenerator.getRankedShare();
+        long queuedAt = System.nanoTime();
+        this.outputStream.write(Protocol.gameType(isRanked ? 2 : 1));
+        Protocol.readFrame(this.inputStream, Protocol.QUEUED);
+
+        Frame frame = Protocol.readFrame(this.inputStream, Protocol.GAME_START);
+        long gameStartedAt = System.nanoTime();
+        this.loadGenerator.getQueueWait().recordSince(queuedAt);
+        frame.readByte();
+        frame.readShort();
+        int playerIndex = frame.readByte();
+
+        int roundNumber = 0;
+        int lowerBound = 0;
+        int upperBound = 0;
+        long guessSentAt = 0;
+        while( true ) {
+            frame = Protocol.readFrame(this.inputStream);
+            if( frame.getOpcode() == Protocol.ROUND_START ) {
+                roundNumber = frame.readShort();
+                lowerBound = frame.readShort();
+                upperBound = frame.readShort();
+            } else if( frame.getOpcode() == Protocol.TURN ) {
+                int guessingPlayerIndex = frame.readByte();
+                if( (guessingPlayerIndex == Protocol.ALL_PLAYERS || guessingPlayerIndex == playerIndex) && this.strategy != Strategy.IDLE ) {
+                    this.think();
+                    int guess = this.strategy == Strategy.SLOPPY ? upperBound + 1 : this.chooseGuess(lowerBound, upperBound);
+                    guessSentAt = System.nanoTime();
+                    this.outputStream.write(Protocol.guess(roundNumber, guess));
+                }
+            } else if( frame.getOpcode() == Protocol.GUESS_ACK ) {
+                this.loadGenerator.getGuessLatency().recordSince(guessSentAt);
+                if( frame.readByte() == 0 ) {
+                    this.loadGenerator.getRejectedGuesses().increment();
+                    guessSentAt = System.nanoTime();
+                    this.outputStream.write(Protocol.guess(roundNumber, this.chooseGuess(lowerBound, upperBound)));
+                }
+            } else if( frame.getOpcode() == Protocol.GAME_END ) {
+                if( isRanked ) {
+                    Protocol.readFrame(this.inputStream, Protocol.RANK_DELTA);
+                }
+                this.loadGenerator.getGameDuration().recordSince(gameStartedAt);
+                this.loadGenerator.getGamesCompleted().increment();
+                return;
+            }
+            // Round results are only read past
+        }
+    }
+
+    private int chooseGuess(int lowerBound, int upperBound) {
+        if( this.strategy == Strategy.MIDDLE ) {
+            return (lowerBound + upperBound) / 2;
+        }
+        return ThreadLocalRandom.current().nextInt(lowerBound, upperBound + 1);
+    }
+
+    private void think() throws InterruptedException {
+        int minThinkMillis = this.loadGenerator.getMinThinkMillis();
+        int maxThinkMillis = this.loadGenerator.getMaxThinkMillis();
+        if( maxThinkMillis > 0 ) {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(minThinkMillis, maxThinkMillis + 1));
+        }
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+
+public class ConnectionAcceptorRunnable implements Runnable {
+    private final ServerSocketChannel serverSocketChannel;
+    private final Selector selector;
+    private final List<PlayerConnection> authenticatedConnections = new ArrayList<>();
+    // Filled by the authentication threads, the selector thread answers the clients
+    private final Queue<AuthenticationResult> authenticationResults = new ConcurrentLinkedQueue<>();
+
+    public ConnectionAcceptorRunnable(ServerSocketChannel serverSocketChannel) throws IOException {
+        this.serverSocketChannel = serverSocketChannel;
+        this.selector = Selector.open();
+        this.serverSocketChannel.configureBlocking(false);
+        this.serverSocketChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    @Override
+    public void run() {
+        //noinspection InfiniteLoopStatement
+        while(true) {
+            try {
+                this.selector.select();
+            } catch(IOException e) {
+                Log.error("Failed to select ready connections.");
+                continue;
+            }
+
+            Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+            while( selectedKeys.hasNext() ) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                if( !key.isValid() ) {
+                    continue;
+                }
+                if( key.isAcceptable() ) {
+                    this.acceptConnection();
+                    continue;
+                }
+
+                PlayerConnection connection = (PlayerConnection) key.attachment();
+                try {
+                    if( key.isWritable() ) {
+                        this.writeMessages(key, connection);
+                    }
+                    if( key.isValid() && key.isReadable() ) {
+                        this.readMessages(key, connection);
+                    }
+                } catch(IOException e) {
+                    Log.warn("Lost connection during authentication: " + e.getMessage());
+                    this.closeConnection(key, connection);
+                }
+            }
+
+            this.answerAuthentications();
+            this.handOffAuthenticatedConnections();
+        }
+    }
+
+    private void acceptConnection() {
+        SocketChannel channel;
+        try {
+            channel = this.serverSocketChannel.accept();
+            if( channel == null ) {
+                return;
+            }
+        } catch(IOException e) {
+            Log.error("Failed to accept client connection.");
+            return;
+        }
+
+        try {
+            if( GameServer.getLoggedInPlayers().size() > GameServer.getMaxPlayers() ) {
+                Log.warn("Server maximum number of players reached, rejecting client connection.");
+                channel.close();
+                return;
+            }
+            Log.info("New player connected: " + channel.socket());
+
+            channel.configureBlocking(false);
+            Player player = new Player(null, null, channel.socket());
+            channel.register(this.selector, SelectionKey.OP_READ, new PlayerConnection(channel, player));
+        } catch(IOException e) {
+            Log.error("Failed to set up client connection.");
+            try {
+                channel.close();
+            } catch(IOException ignored) {
+            }
+        }
+    }
+
+    private void readMessages(SelectionKey key, PlayerConnection connection) throws IOException {
+        if( connection.readFromChannel() < 0 ) {
+            throw new IOException("Client closed the connection.");
+        }
+        this.handleFrames(key, connection);
+    }
+
+    // Handles every frame that has fully arrived, a partial one stays buffered until the next read. Frames that arrive
+    // while the credentials are being verified wait until the answer is sent.
+    private void handleFrames(SelectionKey key, PlayerConnection connection) throws IOException {
+        boolean hasCompleteFrame = true;
+        while( hasCompleteFrame && key.isValid() && connection.getState() != PlayerConnection.State.AUTHENTICATING ) {
+            Frame frame = connection.pollFrame();
+            if( frame == null ) {
+                hasCompleteFrame = false;
+            } else if( connection.getState() == PlayerConnection.State.AUTHENTICATION ) {
+                this.handleAuthentication(key, connection, frame);
+            } else {
+                hasCompleteFrame = this.handleGameTypeSelection(key, connection, frame);
+            }
+        }
+    }
+
+    private void handleAuthentication(SelectionKey key, PlayerConnection connection, Frame frame) throws IOException {
+        if( frame.getOpcode() == Protocol.RESUME ) {
+            this.handleResume(key, connection, frame.readString());
+            return;
+        }
+        if( frame.getOpcode() != Protocol.AUTHENTICATE ) {
+            throw new IOException("Unexpected client message before authentication.");
+        }
+        int choice = frame.readByte();
+        String username = frame.readString();
+        String password = frame.readString();
+        if( choice != 1 && choice != 2 ) {
+            throw new IOException("Unexpected client authentication selection.");
+        }
+
+        // Hashing is slow on purpose, it runs on an authentication thread while the selector serves the other
+        // connections. The connection is not read until the answer comes back.
+        connection.setState(PlayerConnection.State.AUTHENTICATING);
+        key.interestOps(0);
+        try {
+            GameServer.getAuthenticationExecutor().execute(() -> {
+                byte status = authenticate(choice, username, password, connection.getPlayer());
+                this.authenticationResults.add(new AuthenticationResult(key, connection, status));
+                this.selector.wakeup();
+            });
+        } catch(RejectedExecutionException e) {
+            Metrics.REJECTED_AUTHENTICATIONS.increment();
+            this.answerAuthentication(key, connection, Protocol.SERVER_BUSY);
+        }
+    }
+
+    // Runs on an authentication thread
+    private static byte authenticate(int choice, String username, String password, Player player) {
+        if( choice == 1 ) {             // LOGIN
+            return GameServer.playerLogin(username, password, player) ? Protocol.LOGIN_SUCCESSFUL : Protocol.INVALID_LOGIN;
+        }
+        // REGISTER
+        if( !GameServer.isValidCredential(username, password) ) {
+            return Protocol.INVALID_CREDENTIALS;
+        } else if( GameServer.playerRegistration(username, password, player) ) {
+            return Protocol.REGISTRATION_SUCCESSFUL;
+        }
+        return Protocol.USERNAME_TAKEN;
+    }
+
+    private void answerAuthentications() {
+        AuthenticationResult result;
+        while( (result = this.authenticationResults.poll()) != null ) {
+            try {
+                this.answerAuthentication(result.key, result.connection, result.status);
+                // Whatever the client sent in the meantime
+                this.handleFrames(result.key, result.connection);
+            } catch(IOException e) {
+                Log.warn("Lost connection during authentication: " + e.getMessage());
+                this.closeConnection(result.key, result.connection);
+            }
+        }
+    }
+
+    private void answerAuthentication(SelectionKey key, PlayerConnection connection, byte status) throws IOException {
+        if( status == Protocol.LOGIN_SUCCESSFUL || status == Protocol.REGISTRATION_SUCCESSFUL ) {
+            connection.setState(PlayerConnection.State.GAME_TYPE_SELECTION);
+            Metrics.AUTHENTICATION.recordSince(connection.getAcceptedAt());
+        } else {
+            connection.setState(PlayerConnection.State.AUTHENTICATION);
+        }
+        connection.queueFrame(Protocol.authenticationResult(status, connection.getState() == PlayerConnection.State.GAME_TYPE_SELECTION ? connection.getPlayer().getToken() : ""));
+        this.writeMessages(key, connection);
+    }
+
+    // A client that lost its connection comes back with its token instead of authenticating, its session carries on
+    // where it is (queue, game or end game menu) once the connection is handed off
+    private void handleResume(SelectionKey key, PlayerConnection connection, String token) throws IOException {
+        Player player = GameServer.findSession(token);
+        if( player == null || (GameServer.isEventEngine() && player.getConnection() == null) ) {
+            // Unknown, logged out, or still being authenticated on its first connection
+            connection.queueFrame(Protocol.authenticationResult(Protocol.INVALID_TOKEN, ""));
+            this.writeMessages(key, connection);
+            return;
+        }
+        Log.info(player.getUsername() + " reconnected and resumed its session.");
+        connection.setPlayer(player);
+        connection.setState(PlayerConnection.State.RESUMING);
+        key.cancel();
+        this.authenticatedConnections.add(connection);
+    }
+
+    private boolean handleGameTypeSelection(SelectionKey key, PlayerConnection connection, Frame frame) throws IOException {
+        byte[] answer = GameServer.answerLeaderboardQuery(connection.getPlayer(), frame);
+        if( answer != null ) {
+            connection.queueFrame(answer);
+            this.writeMessages(key, connection);
+            return true;
+        }
+        if( frame.getOpcode() != Protocol.GAME_TYPE ) {
+            throw new IOException("Unexpected client message before game type selection.");
+        }
+        int choice = frame.readByte();
+        if( choice != 1 && choice != 2 ) {
+            throw new IOException("Unexpected client game type selection.");
+        }
+        // Heartbeats are skipped by the poll
+        if( connection.pollFrame() != null || connection.hasBufferedInput() ) {
+            throw new IOException("Unexpected client input before game start.");
+        }
+        connection.setRankedGame(choice == 2);
+
+        // The player is fully authenticated, the connection leaves the selector once the current selection is handled
+        key.cancel();
+        this.authenticatedConnections.add(connection);
+        return false;
+    }
+
+    private void handOffAuthenticatedConnections() {
+        if( this.authenticatedConnections.isEmpty() ) {
+            return;
+        }
+        try {
+            // Flushes the cancelled keys so the channels can go back to blocking mode or move to another selector
+            this.selector.selectNow();
+        } catch(IOException e) {
+            Log.error("Failed to deregister authenticated connections.");
+        }
+
+        for( PlayerConnection connection: this.authenticatedConnections ) {
+            if( connection.getState() == PlayerConnection.State.RESUMING ) {
+                this.handOffResumedConnection(connection);
+                continue;
+            }
+            if( GameServer.isEventEngine() ) {
+                // The connection stays non-blocking, an event loop serves it from now on
+                GameServer.nextEventLoop().takeOver(connection);
+                continue;
+            }
+            try {
+                connection.getChannel().configureBlocking(true);
+                connection.writeToChannel();
+            } catch(IOException e) {
+                Log.error("Failed to move player " + connection.getPlayer().getUsername() + " to matchmaking.");
+                this.closeConnection(null, connection);
+                continue;
+            }
+            // Queueing never blocks, so it happens right here: the session threads are only taken by the end game menu,
+            // whose reads may wait for a minute, and a login must not wait for one of them to free up
+            try {
+                GameServer.enterMatchmaking(connection.getPlayer(), connection.isRankedGame());
+            } catch(IOException e) {
+                Log.error("Failed to move player " + connection.getPlayer().getUsername() + " to matchmaking.");
+                this.closeConnection(null, connection);
+            }
+        }
+        this.authenticatedConnections.clear();
+    }
+
+    private void handOffResumedConnection(PlayerConnection connection) {
+        Player player = connection.getPlayer();
+        if( GameServer.isEventEngine() ) {
+            // The event loop of the previous connection moves the session, it owns everything the session touches
+            PlayerConnection previousConnection = player.getConnection();
+            previousConnection.getEventLoop().resume(connection, previousConnection);
+            return;
+        }
+        try {
+            connection.getChannel().configureBlocking(true);
+        } catch(IOException e) {
+            Log.error("Failed to resume the session of player " + player.getUsername() + ".");
+            this.closeChannel(connection);
+            return;
+        }
+        // May wait for the send lock of a game, but never for a session thread to free up
+        GameServer.getResumeExecutor().execute(() -> {
+            try {
+                GameServer.resumeSession(player, connection.getChannel().socket());
+            } catch(IOException e) {
+                Log.error("Failed to resume the session of player " + player.getUsername() + ".");
+                this.closeChannel(connection);
+            }
+        });
+    }
+
+    private void writeMessages(SelectionKey key, PlayerConnection connection) throws IOException {
+        if( connection.writeToChannel() ) {
+            key.interestOps(SelectionKey.OP_READ);
+        } else {
+            key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+    }
+
+    private void closeConnection(SelectionKey key, PlayerConnection connection) {
+        if( key != null ) {
+            key.cancel();
+        }
+        this.closeChannel(connection);
+        Player player = connection.getPlayer();
+        if( GameServer.isLoggedIn(player) ) {
+            GameServer.playerLogout(player);
+        }
+    }
+
+    // A resumed session stays logged in, the heartbeat monitor evicts it if its client does not come back
+    private void closeChannel(PlayerConnection connection) {
+        try {
+            connection.getChannel().close();
+        } catch(IOException ignored) {
+        }
+    }
+
+    // A verified (or refused) login or registration, on its way back to the selector thread
+    private static class AuthenticationResult {
+        private final SelectionKey key;
+        private final PlayerConnection connection;
+        private final byte status;
+
+        private AuthenticationResult(SelectionKey key, PlayerConnection connection, byte status) {
+            this.key = key;
+            this.connection = connection;
+            this.status = status;
+        }
+    }
+}
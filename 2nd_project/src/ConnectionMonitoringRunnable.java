@@ -1,9 +1,14 @@
-import java.io.IOException;
-import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class ConnectionMonitoringRunnable implements Runnable {
+    private static final long CHECK_INTERVAL_MILLIS = 5000;
+    // Clients send a heartbeat every 5 seconds. The timeout is longer than a turn, because the blocking engine only
+    // takes the heartbeats of the players that are not guessing between turns.
+    protected static final long HEARTBEAT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(45);
+
     private boolean isStopRequested = false;
     private final ReentrantLock lock = new ReentrantLock();
 
@@ -27,22 +32,37 @@ public class ConnectionMonitoringRunnable implements Runnable {
 
     @Override
     public void run() {
-        System.out.println( "\t" + Thread.currentThread().getName() + " started.");
+        Log.info(Thread.currentThread().getName() + " started.");
         while( !this.getIsStopRequested() ) {
-            System.out.println( "\t" + Thread.currentThread().getName() + " is checking for unexpected disconnects." );
+            try {
+                Thread.sleep(CHECK_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            GameServer.drainQueuedHeartbeats();
 
-            for(Player player: GameServer.getLoggedInPlayers()) {
-                // To do
-                //System.out.println(player.getUsername() + " disconnected unexpectedly.");
-                System.out.println( "\t" + player.getUsername() + " is active." );
+            // One pass over every session against the same clock reading. The logged in players are a concurrent map's
+            // view, it can be iterated while players log in and out.
+            long now = System.nanoTime();
+            List<Player> deadPlayers = new ArrayList<>();
+            for( Player player: GameServer.getLoggedInPlayers() ) {
+                if( now - player.getLastSeenAt() > HEARTBEAT_TIMEOUT_NANOS ) {
+                    deadPlayers.add(player);
+                }
             }
 
-            try {
-                Thread.sleep(10000);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            for( Player player: deadPlayers ) {
+                Log.info(player.getUsername() + " stopped sending heartbeats and was disconnected.");
+                GameServer.evictPlayer(player);
+            }
+
+            // Evicted sessions took their tokens with them, this sweeps any token left behind by a session that is gone
+            int numberOfExpiredTokens = GameServer.expireSessionTokens(now);
+            if( numberOfExpiredTokens > 0 ) {
+                Log.debug(numberOfExpiredTokens + " expired session token/s removed.");
             }
         }
-        System.out.println( "\t" + Thread.currentThread().getName() + " stopped.");
+        Log.info(Thread.currentThread().getName() + " stopped.");
     }
 }
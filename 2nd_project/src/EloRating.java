@@ -0,0 +1,60 @@
+import java.util.Collection;
+
+// Multiplayer Elo: a ranked game counts as one match between every pair of its players, won by the player that won more
+// rounds (a draw if they won as many). A player's rating moves by K times its score minus its expected score, averaged
+// over its opponents, so beating higher rated players gains more than beating lower rated ones. Ratings are the rank
+// points the player stores already keep.
+public class EloRating {
+    public static final int INITIAL_RATING = 1000;
+    private static final double K_FACTOR = 32;
+    // A rating difference this large makes the higher rated player 10 times as likely to win
+    private static final double SCALE = 400;
+    // Legacy rank points are seeded within this many points, the matchmaking window
+    private static final int LEGACY_SPREAD = 200;
+
+    // Returns the rating change of every player, computed once for the whole game
+    public static int[] ratingChanges(int[] ratings, int[] roundsWon) {
+        int numberOfPlayers = ratings.length;
+        int[] ratingChanges = new int[numberOfPlayers];
+        if( numberOfPlayers < 2 ) {
+            return ratingChanges;
+        }
+        for( int i = 0; i < numberOfPlayers; i++ ) {
+            double scoreDifference = 0;
+            for( int j = 0; j < numberOfPlayers; j++ ) {
+                if( i == j ) {
+                    continue;
+                }
+                double score = roundsWon[i] > roundsWon[j] ? 1 : roundsWon[i] == roundsWon[j] ? 0.5 : 0;
+                scoreDifference += score - expectedScore(ratings[i], ratings[j]);
+            }
+            ratingChanges[i] = (int) Math.round(K_FACTOR * scoreDifference / (numberOfPlayers - 1));
+        }
+        return ratingChanges;
+    }
+
+    // Rank points from before Elo were bonuses for every round won, so they mostly counted the games played. They are
+    // mapped onto ratings from INITIAL_RATING - LEGACY_SPREAD / 2 to INITIAL_RATING + LEGACY_SPREAD / 2: the players keep
+    // their order, every one of them can be matched with new players at once, and their games spread them out from there.
+    public static void seedLegacyRatings(Collection<Player> players) {
+        if( players.isEmpty() ) {
+            return;
+        }
+        int minRankPoints = Integer.MAX_VALUE;
+        int maxRankPoints = Integer.MIN_VALUE;
+        for( Player player: players ) {
+            minRankPoints = Math.min(minRankPoints, player.getRankPoints());
+            maxRankPoints = Math.max(maxRankPoints, player.getRankPoints());
+        }
+        int range = Math.max(1, maxRankPoints - minRankPoints);
+        for( Player player: players ) {
+            player.setRankPoints(INITIAL_RATING - LEGACY_SPREAD / 2 + (int) ((long) (player.getRankPoints() - minRankPoints) * LEGACY_SPREAD / range));
+        }
+        Log.info("Rank points of " + players.size() + " player/s (" + minRankPoints + " to " + maxRankPoints + ") seeded as Elo ratings.");
+    }
+
+    // Probability of the first player beating the second
+    public static double expectedScore(int rating, int opponentRating) {
+        return 1 / (1 + Math.pow(10, (opponentRating - rating) / SCALE));
+    }
+}
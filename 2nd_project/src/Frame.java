@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// One received protocol frame, its fields are read in the order they were written
+public class Frame {
+    private final byte opcode;
+    private final ByteBuffer payload;
+
+    public Frame(byte opcode, ByteBuffer payload) {
+        this.opcode = opcode;
+        this.payload = payload;
+    }
+
+    public byte readByte() throws IOException {
+        try {
+            return this.payload.get();
+        } catch(BufferUnderflowException e) {
+            throw new IOException("Truncated message " + this.opcode + ".");
+        }
+    }
+
+    public short readShort() throws IOException {
+        try {
+            return this.payload.getShort();
+        } catch(BufferUnderflowException e) {
+            throw new IOException("Truncated message " + this.opcode + ".");
+        }
+    }
+
+    public int readInt() throws IOException {
+        try {
+            return this.payload.getInt();
+        } catch(BufferUnderflowException e) {
+            throw new IOException("Truncated message " + this.opcode + ".");
+        }
+    }
+
+    public String readString() throws IOException {
+        int length = this.readShort() & 0xFFFF;
+        if( this.payload.remaining() < length ) {
+            throw new IOException("Truncated message " + this.opcode + ".");
+        }
+        byte[] bytes = new byte[length];
+        this.payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Getters
+    public byte getOpcode() {
+        return this.opcode;
+    }
+}
@@ -1,28 +1,555 @@
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public abstract class Game {
+    // Time a player has to guess, in its turn or in a simultaneous round. A player that misses it keeps a guess of 0.
+    protected static final int GUESS_DEADLINE_MILLIS = 30000;
+
     protected final List<Player> players;
     protected final int gameIndex;
     protected final int[] roundsWonByPlayer;
+    // Every player guesses at the same time instead of one after the other
+    protected final boolean isSimultaneous;
+
+    // Round state, shared by both engines and only touched by the thread (or event loop) playing the game. The buffers are
+    // allocated once per game and reset every round, players are told apart by their index. The state is also read by
+    // the players that resume their session, it is written last and publishes the rest.
+    private enum EngineState { AWAITING_GUESS, AWAITING_GUESSES, SETTLING, ENDED }
+    private volatile EngineState engineState = null;
+    private int roundNumber = 0;
+    private int lowerBound = 0;
+    private int upperBound = 0;
+    private int targetNumber = 0;
+    private int guessingPlayerIndex = 0;
+    private final int[] guesses;
+    private final boolean[] hasGuessed;
+    // Missed the deadline or lost its connection this round, its guess of 0 cannot win it
+    private final boolean[] hasForfeited;
+    private int numberOfGuesses = 0;
+    private long roundStartedAt = 0;
+    // Rendered once, the start of every guess log line
+    private final String roundLogPrefix;
+
+    // Event engine state, only touched on the game's event loop
+    private GameEventLoop eventLoop = null;
+    private Runnable onGameEnded = null;
+    // Counts the turns (or simultaneous rounds), a deadline only applies to the one it was set for
+    private int turnNumber = 0;
+    private Timeout guessTimeout = null;
 
     public Game(List<Player> players, int gameIndex) {
         this.players = players;
         this.gameIndex = gameIndex;
         this.roundsWonByPlayer = new int[players.size()];
+        this.isSimultaneous = GameServer.isSimultaneousRounds();
+        this.guesses = new int[players.size()];
+        this.hasGuessed = new boolean[players.size()];
+        this.hasForfeited = new boolean[players.size()];
+        this.roundLogPrefix = "Game " + gameIndex + " - Round ";
     }
 
-    protected void updatePlayersFile() {
-        List<Player> playerList = GameServer.getRegisteredPlayers();
+    // Copies the players' rank points to the registry and saves the changes, the future completes once they are durable
+    protected CompletableFuture<Void> updatePlayersFile() {
+        List<RankChange> rankChanges = new ArrayList<>();
         for( Player player: this.players ) {
-            for (Player registeredPlayer : playerList) {
-                if (Objects.equals(registeredPlayer.getUsername(), player.getUsername())) {
-                    registeredPlayer.setRankPoints(player.getRankPoints());
+            Player registeredPlayer = GameServer.getRegisteredPlayer(player.getUsername());
+            if( registeredPlayer == null ) {
+                continue;
+            }
+            int rankDelta = player.getRankPoints() - registeredPlayer.getRankPoints();
+            if( rankDelta != 0 ) {
+                GameServer.updateLeaderboard(player.getUsername(), registeredPlayer.getRankPoints(), player.getRankPoints());
+                registeredPlayer.setRankPoints(player.getRankPoints());
+                rankChanges.add(new RankChange(registeredPlayer, rankDelta));
+            }
+        }
+        if( rankChanges.isEmpty() ) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return GameServer.savePlayerRankChanges(rankChanges);
+    }
+
+    // Blocking engine: plays the whole game on the calling thread, blocking on every guess
+    public void start() {
+        Log.info("Game " + this.gameIndex + " (" + this.getGameType() + ") started.");
+        while( this.roundNumber < this.getNumberOfRounds() ) {
+            this.startRound();
+            this.playRound();
+        }
+
+        // Waits until the settlement is durable before announcing it
+        this.engineState = EngineState.SETTLING;
+        try {
+            this.settle().join();
+        } catch(CompletionException e) {
+            Log.error("Failed to save the ranks of game " + this.gameIndex + ".");
+        }
+        this.announceSettlement();
+        this.engineState = EngineState.ENDED;
+    }
+
+    protected abstract int getNumberOfRounds();
+
+    protected abstract String getGameType();
+
+    protected abstract boolean isRanked();
+
+    // Settles the game once the last round is played, the future completes when its results can be announced
+    protected CompletableFuture<Void> settle() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    // Sends whatever the settlement produced to the players
+    protected void announceSettlement() {
+        for( int i = 0; i < this.players.size(); i++ ) {
+            this.announceSettlement(i);
+        }
+    }
+
+    protected void announceSettlement(int playerIndex) {
+    }
+
+    // Brings a player that resumed its session up to date: the game start, the round in progress and its turn, or the
+    // end of the game it missed. Called on the game's event loop, or with the player's send lock
+    // held on the blocking engine. Nothing is flushed.
+    public void resync(Player player) {
+        int playerIndex = this.players.indexOf(player);
+        this.send(player, Protocol.gameStart(this.isRanked(), this.getNumberOfRounds(), this.players, playerIndex));
+        EngineState engineState = this.engineState;
+        if( engineState == EngineState.AWAITING_GUESSES ) {
+            this.send(player, Protocol.roundStart(this.roundNumber, this.lowerBound, this.upperBound));
+            // On the blocking engine the game's thread may be taking the guess meanwhile, a second one is dropped
+            if( !this.hasGuessed[playerIndex] ) {
+                this.send(player, Protocol.turn(Protocol.ALL_PLAYERS));
+            }
+        } else if( engineState == EngineState.AWAITING_GUESS ) {
+            this.send(player, Protocol.roundStart(this.roundNumber, this.lowerBound, this.upperBound));
+            this.send(player, Protocol.turn(this.guessingPlayerIndex));
+        } else if( engineState == EngineState.SETTLING || engineState == EngineState.ENDED ) {
+            this.send(player, Protocol.gameEnd(this.roundsWonByPlayer[playerIndex], this.getNumberOfRounds()));
+            if( engineState == EngineState.ENDED ) {
+                this.announceSettlement(playerIndex);
+            }
+        }
+    }
+
+    // Event engine: the resumed player's session is attached to the game again, a guess may already be buffered
+    public void onResume(Player player) {
+        this.resync(player);
+        this.flush(player);
+        if( this.engineState == EngineState.ENDED ) {
+            // The end game menu may have been opened on the previous connection
+            PlayerConnection connection = player.getConnection();
+            connection.getEventLoop().startSession(connection);
+            return;
+        }
+        this.onInput(player);
+    }
+
+    // Blocking engine: plays the round drawn by startRound, its results are sent once every player guessed or missed
+    // the deadline
+    private void playRound() {
+        // Send round message to all clients, it goes out with the first turn
+        this.broadcast(Protocol.roundStart(this.roundNumber, this.lowerBound, this.upperBound));
+        if( this.isSimultaneous ) {
+            this.collectGuesses();
+        } else {
+            for( int i = 0; i < this.players.size(); i++ ) {
+                this.guessingPlayerIndex = i;
+                this.engineState = EngineState.AWAITING_GUESS;
+
+                // Send turn message for clients, along with the previous player's guess ack
+                this.broadcast(Protocol.turn(i));
+                this.flushTurn(i);
+                this.drainHeartbeats();
+
+                // A player that does not answer forfeits its guess and the game moves on
+                this.awaitGuess(i, System.currentTimeMillis() + GUESS_DEADLINE_MILLIS);
+            }
+        }
+        this.sendRoundResults();
+        this.flushAll();
+    }
+
+    // Blocking engine, simultaneous rounds: every player is asked at once and thinks in parallel with the others, so
+    // reading the guesses one after the other only waits for the slowest player. Whoever has not guessed by the shared
+    // deadline keeps a guess of 0, like a player whose connection failed.
+    private void collectGuesses() {
+        this.engineState = EngineState.AWAITING_GUESSES;
+        this.broadcast(Protocol.turn(Protocol.ALL_PLAYERS));
+        this.flushAll();
+        long deadline = System.currentTimeMillis() + GUESS_DEADLINE_MILLIS;
+
+        // Reading one player after the other is fine, they all think at the same time
+        for( int i = 0; i < this.players.size(); i++ ) {
+            this.drainHeartbeats();
+            this.awaitGuess(i, deadline);
+        }
+    }
+
+    // Blocking engine: reads and validates the player's guess, a player that misses the deadline keeps a guess of 0
+    private void awaitGuess(int playerIndex, long deadline) {
+        Player player = this.players.get(playerIndex);
+        Socket socket = player.getSocket();
+        while( true ) {
+            try {
+                int guess = this.readGuess(player, this.roundNumber, deadline);
+                // Validates guess
+                while( !( guess>=this.lowerBound && guess<=this.upperBound ) ) {
+                    this.send(player, Protocol.guessAck(false));
+                    this.flush(player);
+                    guess = this.readGuess(player, this.roundNumber, deadline);
+                }
+                this.recordGuess(playerIndex, guess);
+            } catch(SocketTimeoutException e) {
+                this.reportMissedDeadline(playerIndex);
+                this.recordForfeit(playerIndex);
+            } catch(IOException e) {
+                if( player.getSocket() != socket ) {
+                    // The session resumed on a new socket, which was sent the turn again: its guess is read from there
+                    // until the same deadline
+                    socket = player.getSocket();
+                    continue;
+                }
+                Log.error("Failed to receive guess from player " + player.getUsername() + ".");
+                this.recordForfeit(playerIndex);
+            }
+            return;
+        }
+    }
+
+    // Blocking engine: reads the player's guess for the round, a guess left over from an earlier round is dropped. Fails
+    // with a SocketTimeoutException once the deadline passed.
+    protected int readGuess(Player player, int roundNumber, long deadline) throws IOException {
+        try {
+            return player.readGuess(roundNumber, deadline);
+        } finally {
+            // Looked up again, a resumed session moves to a new socket (which inherits the timeout)
+            try {
+                player.getSocket().setSoTimeout(0);
+            } catch(IOException ignored) {
+                // The socket is closed, its next read fails anyway
+            }
+        }
+    }
+
+    // Event engine: plays the game as a state machine on the event loop (round start -> awaiting the guess of each
+    // player in turn, or of all players at once in simultaneous rounds -> round result -> next round), only a guess, a
+    // lost connection or the round deadline moves it forward
+    public void startOnEventLoop(GameEventLoop eventLoop, Runnable onGameEnded) {
+        this.eventLoop = eventLoop;
+        this.onGameEnded = onGameEnded;
+        Log.info("Game " + this.gameIndex + " (" + this.getGameType() + ") started.");
+        this.startNextRound();
+    }
+
+    // Called on the game's event loop whenever the player sent something or its connection was lost
+    public void onInput(Player player) {
+        int playerIndex;
+        if( this.engineState == EngineState.AWAITING_GUESSES ) {
+            playerIndex = this.players.indexOf(player);
+        } else if( this.engineState == EngineState.AWAITING_GUESS && this.players.get(this.guessingPlayerIndex) == player ) {
+            playerIndex = this.guessingPlayerIndex;
+        } else {
+            // Input of a player that is not guessing stays buffered until its turn
+            return;
+        }
+        if( this.hasGuessed[playerIndex] ) {
+            // Already guessed this simultaneous round, the rest waits for the next one
+            return;
+        }
+
+        PlayerConnection connection = player.getConnection();
+        try {
+            Frame frame = connection.pollFrame();
+            while( frame != null ) {
+                if( frame.getOpcode() != Protocol.GUESS ) {
+                    throw new IOException("Unexpected message " + frame.getOpcode() + " instead of a guess.");
+                }
+                // A guess that arrives after its round was resolved is dropped
+                if( frame.readShort() == this.roundNumber ) {
+                    int guess = frame.readInt();
+                    if( guess >= this.lowerBound && guess <= this.upperBound ) {
+                        this.acceptGuess(playerIndex, guess);
+                        return;
+                    }
+                    this.send(player, Protocol.guessAck(false));
+                    this.flush(player);
+                }
+                frame = connection.pollFrame();
+            }
+        } catch(IOException e) {
+            // A malformed message forfeits the guess
+            Log.warn(e.getMessage());
+            this.forfeitGuess(playerIndex);
+            return;
+        }
+        if( connection.isClosed() ) {
+            Log.error("Failed to receive guess from player " + player.getUsername() + ".");
+            this.forfeitGuess(playerIndex);
+        }
+    }
+
+    public GameEventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+
+    // Draws the next round and resets the round buffers, on both engines
+    private void startRound() {
+        this.roundStartedAt = System.nanoTime();
+        this.roundNumber++;
+        // Number between 50..99
+        this.upperBound = (int) (Math.random() * (50)) + 49;
+        // Number between 0..49
+        this.lowerBound = (int) (Math.random() * (49));
+        // Generate random number between lowerBound and upperBound
+        this.targetNumber = (int) (Math.random() * (this.upperBound - this.lowerBound)) + this.lowerBound;
+        Arrays.fill(this.guesses, 0);
+        Arrays.fill(this.hasGuessed, false);
+        Arrays.fill(this.hasForfeited, false);
+        this.numberOfGuesses = 0;
+    }
+
+    private void startNextRound() {
+        this.startRound();
+
+        // Send round message to all clients, it goes out with the first turn
+        this.broadcast(Protocol.roundStart(this.roundNumber, this.lowerBound, this.upperBound));
+        if( this.isSimultaneous ) {
+            this.askForGuesses();
+        } else {
+            this.askForGuess(0);
+        }
+    }
+
+    // Simultaneous rounds: every player guesses at once, the round is resolved by the last guess or the deadline
+    private void askForGuesses() {
+        this.engineState = EngineState.AWAITING_GUESSES;
+        this.broadcast(Protocol.turn(Protocol.ALL_PLAYERS));
+        this.flushAll();
+
+        int turnNumber = this.startTurn();
+        this.guessTimeout = this.eventLoop.schedule(GUESS_DEADLINE_MILLIS, () -> {
+            if( this.turnNumber != turnNumber ) {
+                return;
+            }
+            for( int i = 0; i < this.players.size(); i++ ) {
+                if( !this.hasGuessed[i] ) {
+                    this.reportMissedDeadline(i);
                 }
             }
+            this.resolveRound();
+        });
+
+        // Guesses may already be buffered
+        for( int i = 0; i < this.players.size(); i++ ) {
+            if( this.turnNumber != turnNumber ) {
+                break;
+            }
+            this.onInput(this.players.get(i));
+        }
+    }
+
+    private void askForGuess(int playerIndex) {
+        this.guessingPlayerIndex = playerIndex;
+        this.engineState = EngineState.AWAITING_GUESS;
+
+        // Send turn message for clients, along with the previous player's guess ack
+        this.broadcast(Protocol.turn(playerIndex));
+        this.flushTurn(playerIndex);
+        Player guessingPlayer = this.players.get(playerIndex);
+
+        // A player that does not answer forfeits its guess and the game moves on
+        int turnNumber = this.startTurn();
+        this.guessTimeout = this.eventLoop.schedule(GUESS_DEADLINE_MILLIS, () -> {
+            if( this.turnNumber == turnNumber ) {
+                this.reportMissedDeadline(playerIndex);
+                this.forfeitGuess(playerIndex);
+            }
+        });
+
+        // The guess may already be buffered
+        this.onInput(guessingPlayer);
+    }
+
+    // Ends the previous turn, whose deadline no longer applies, and returns the number of the new one
+    private int startTurn() {
+        if( this.guessTimeout != null ) {
+            this.guessTimeout.cancel();
+        }
+        return ++this.turnNumber;
+    }
+
+    private void acceptGuess(int playerIndex, int guess) {
+        this.recordGuess(playerIndex, guess);
+        this.nextGuess();
+    }
+
+    private void forfeitGuess(int playerIndex) {
+        this.recordForfeit(playerIndex);
+        this.nextGuess();
+    }
+
+    // Acknowledges a valid guess, on both engines
+    private void recordGuess(int playerIndex, int guess) {
+        Player player = this.players.get(playerIndex);
+        this.send(player, Protocol.guessAck(true));
+        if( this.isSimultaneous ) {
+            // Nobody else is told about the guess, the player learns right away that it only waits for the others now
+            this.flush(player);
+        }
+        // Traced per guess, the line is only built when tracing is on
+        if( Log.isEnabled(Log.Level.TRACE) ) {
+            int distance = Math.abs(guess - this.targetNumber);
+            Log.trace(this.roundLogPrefix + this.roundNumber + " of " + this.getNumberOfRounds() + ": " + player.getUsername()
+                    + " guessed " + guess + ". Distance from target: " + distance + " (target=" + this.targetNumber + ").");
+        }
+        this.guesses[playerIndex] = guess;
+        this.hasGuessed[playerIndex] = true;
+        this.numberOfGuesses++;
+        Metrics.GUESSES.increment();
+    }
+
+    // The player keeps a guess of 0, which is left out when picking the round winner
+    private void recordForfeit(int playerIndex) {
+        this.hasGuessed[playerIndex] = true;
+        this.hasForfeited[playerIndex] = true;
+        this.numberOfGuesses++;
+        Metrics.FORFEITED_GUESSES.increment();
+    }
+
+    private void reportMissedDeadline(int playerIndex) {
+        if( this.isSimultaneous ) {
+            Log.warn("Player " + this.players.get(playerIndex).getUsername() + " did not guess before the round deadline.");
+        } else {
+            Log.warn("Player " + this.players.get(playerIndex).getUsername() + " did not guess in time.");
+        }
+    }
+
+    private void nextGuess() {
+        if( !this.isSimultaneous ) {
+            this.nextTurn();
+        } else if( this.numberOfGuesses == this.players.size() ) {
+            this.resolveRound();
+        }
+    }
+
+    private void nextTurn() {
+        if( this.guessingPlayerIndex + 1 < this.players.size() ) {
+            this.askForGuess(this.guessingPlayerIndex + 1);
+        } else {
+            this.resolveRound();
+        }
+    }
+
+    private void resolveRound() {
+        // No guess is awaited until the next turn
+        this.startTurn();
+        this.sendRoundResults();
+
+        if( this.roundNumber < this.getNumberOfRounds() ) {
+            this.startNextRound();
+            return;
+        }
+        this.flushAll();
+
+        // The event loop moves on while the game settles, the results are announced back on it
+        this.engineState = EngineState.SETTLING;
+        this.settle().whenComplete((ignored, e) -> this.eventLoop.execute(() -> {
+            if( e != null ) {
+                Log.error("Failed to save the ranks of game " + this.gameIndex + ".");
+            }
+            this.announceSettlement();
+            this.engineState = EngineState.ENDED;
+            this.onGameEnded.run();
+        }));
+    }
+
+    // Determines the round winner and sends every player the round result, and the game result after the last round, on
+    // both engines. Nothing is flushed.
+    private void sendRoundResults() {
+        // Determine the round winner among the players that guessed, nobody wins if they all forfeited
+        int closestGuess = Integer.MAX_VALUE;
+        int roundWinnerIndex = -1;
+        for (int i = 0; i < this.players.size(); i++) {
+            if( this.hasForfeited[i] ) {
+                continue;
+            }
+            int distance = Math.abs(this.guesses[i] - this.targetNumber);
+            if (distance < closestGuess) {
+                closestGuess = distance;
+                roundWinnerIndex = i;
+            }
+        }
+
+        // Send round result to all clients
+        boolean isLastRound = this.roundNumber == this.getNumberOfRounds();
+        for (int i = 0; i < this.players.size(); i++) {
+            Player player = this.players.get(i);
+            int distance = Math.abs(this.guesses[i] - this.targetNumber);
+            if (i == roundWinnerIndex) {
+                this.roundsWonByPlayer[i]++;
+            }
+            this.send(player, Protocol.roundResult(this.roundNumber, this.targetNumber, roundWinnerIndex, this.guesses[i], distance));
+            if( isLastRound ) {
+                this.send(player, Protocol.gameEnd(this.roundsWonByPlayer[i], this.getNumberOfRounds()));
+            }
         }
-        GameServer.savePlayers(playerList);
+        Metrics.ROUND_DURATION.recordSince(this.roundStartedAt);
     }
 
-    public abstract void start();
-}
\ No newline at end of file
+    // Blocking engine: the game only reads the guessing player, the other players' heartbeats are taken at every step
+    protected void drainHeartbeats() {
+        for( int i = 0; i < this.players.size(); i++ ) {
+            this.players.get(i).drainHeartbeats();
+        }
+    }
+
+    protected void send(Player player, byte[] frame) {
+        try {
+            player.send(frame);
+        } catch(IOException e) {
+            Log.error("Failed to send message to player " + player.getUsername() + ".");
+        }
+    }
+
+    // Sends the same encoded frame to every player, nothing is written until the next flush
+    protected void broadcast(byte[] frame) {
+        for( int i = 0; i < this.players.size(); i++ ) {
+            this.send(this.players.get(i), frame);
+        }
+    }
+
+    // Ends a step of the game: each player gets everything buffered for it in one write
+    protected void flushAll() {
+        for( int i = 0; i < this.players.size(); i++ ) {
+            this.flush(this.players.get(i));
+        }
+    }
+
+    // Ends a turn, on both engines: the round start and first turn reach every player at once, later turns are only
+    // written to the guessing player and to the one whose guess was just acknowledged. The others' turn notices wait for
+    // their own turn or the round results, so a turn costs two writes instead of one per player.
+    private void flushTurn(int playerIndex) {
+        if( playerIndex == 0 ) {
+            this.flushAll();
+            return;
+        }
+        this.flush(this.players.get(playerIndex - 1));
+        this.flush(this.players.get(playerIndex));
+    }
+
+    protected void flush(Player player) {
+        try {
+            player.flush();
+        } catch(IOException e) {
+            Log.error("Failed to send message to player " + player.getUsername() + ".");
+        }
+    }
+}
@@ -2,15 +2,36 @@ import java.io.*;
 import java.net.Socket;
 import java.util.Scanner;
 import java.util.Timer;
+import java.util.TimerTask;
 
 public class GameClient {
     private static final int CONSOLE_TIMEOUT = 1200;
+    private static final int LEADERBOARD_SIZE = 10;
+    private static final String HOSTNAME = "localhost";
+    private static final int PORT = 5000;
+    private static final int RECONNECT_ATTEMPTS = 5;
+    private static final int RECONNECT_DELAY = 2000;
     private static Socket SOCKET;
+    // Replaced when the session is resumed on a new connection
+    private static volatile DataInputStream INPUT_STREAM;
+    private static volatile DataOutputStream OUTPUT_STREAM;
+    // Given by the server once authenticated, it resumes the session after a reconnect
+    private static String TOKEN = null;
 
     public static void main(String[] args) {
+        // Bot mode, "--bots=N" plays N simulated players against the server instead of one person
+        for( String arg: args ) {
+            if( arg.startsWith("--bots=") ) {
+                try {
+                    LoadGenerator.main(args);
+                } catch(InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return;
+            }
+        }
+
         try {
-            String HOSTNAME = "localhost";
-            int PORT = 5000;
             Socket socket = new Socket(HOSTNAME, PORT);
             SOCKET = socket;
             int PING_INTERVAL = 5000;
@@ -22,12 +43,30 @@ public class GameClient {
             Scanner scanner = new Scanner(System.in);
             DataInputStream inputStream = new DataInputStream(socket.getInputStream());
             DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+            INPUT_STREAM = inputStream;
+            OUTPUT_STREAM = outputStream;
+
+            // Tells the server the client is alive while the player thinks or waits in a queue. Frames are written whole
+            // (DataOutputStream writes are synchronized), so heartbeats never split another message.
+            Timer heartbeatTimer = new Timer("Heartbeat", true);
+            heartbeatTimer.scheduleAtFixedRate(new TimerTask() {
+                @Override
+                public void run() {
+                    try {
+                        OUTPUT_STREAM.write(Protocol.ping());
+                    } catch(IOException ignored) {
+                        // The connection is gone, the main thread notices it on its next read and reconnects
+                    }
+                }
+            }, PING_INTERVAL, PING_INTERVAL);
 
             playerAuthentication(inputStream, outputStream, scanner);
 
-            int numberOfPlayersInGame = gameSetup(inputStream, outputStream, scanner);
+            GameSetup gameSetup = gameSetup(inputStream, outputStream, scanner);
 
-            gameStart(inputStream, outputStream, scanner, numberOfPlayersInGame);
+            if( gameSetup != null ) {
+                gameStart(inputStream, outputStream, scanner, gameSetup);
+            }
 
         } catch (IOException e) {
             System.out.println("\nClient exception: " + e.getMessage());
@@ -65,7 +104,7 @@ public class GameClient {
         if( choice == 1 ) {
             try {
                 // Send play again notice to server
-                outputStream.writeInt(choice);
+                outputStream.write(Protocol.afterGame(choice));
                 Thread.sleep(CONSOLE_TIMEOUT);
             } catch(InterruptedException e) {
                 e.printStackTrace();
@@ -73,12 +112,14 @@ public class GameClient {
                 System.err.println("Failed to send play again notice to server.");
             }
             clearConsole();
-            int numberOfPlayersInGame = gameSetup(inputStream, outputStream, scanner);
-            gameStart(inputStream, outputStream, scanner, numberOfPlayersInGame);
+            GameSetup gameSetup = gameSetup(inputStream, outputStream, scanner);
+            if( gameSetup != null ) {
+                gameStart(inputStream, outputStream, scanner, gameSetup);
+            }
         } else {
             try {
                 // Send disconnect notice to server
-                outputStream.writeInt(choice);
+                outputStream.write(Protocol.afterGame(choice));
                 SOCKET.close();
             } catch(IOException e) {
                 System.err.println("Failed to send disconnect notice to server.");
@@ -86,115 +127,162 @@ public class GameClient {
         }
     }
 
-    private static int gameSetup(DataInputStream inputStream, DataOutputStream outputStream, Scanner scanner) {
+    private static GameSetup gameSetup(DataInputStream inputStream, DataOutputStream outputStream, Scanner scanner) {
         // Handling game type selection
-        gameTypeSelection(outputStream, scanner);
+        gameTypeSelection(inputStream, outputStream, scanner);
 
         try {
             // Gets queue validation
-            System.out.println(inputStream.readUTF());
+            boolean isRankedQueue = Protocol.readFrame(inputStream, Protocol.QUEUED).readByte() == 1;
+            System.out.println("You are now queuing for a " + ( isRankedQueue ? "ranked" : "simple" ) + " game.\nWaiting for players...");
         } catch(IOException e) {
             System.err.println("Failed to get queue validation from server.");
         }
 
-        String message = "";
+        return waitForGame(inputStream, scanner);
+    }
+
+    // Returns null if the connection was lost, the session carried on from wherever it was resumed
+    private static GameSetup waitForGame(DataInputStream inputStream, Scanner scanner) {
+        GameSetup gameSetup = new GameSetup();
         try {
-            // Gets & prints game creation message
-            message = inputStream.readUTF();
-            System.out.println(message);
+            // Gets game creation message, with the number of rounds and every player of the game
+            Frame frame = Protocol.readFrame(inputStream, Protocol.GAME_START);
+            gameSetup.isRanked = frame.readByte() == 1;
+            gameSetup.numberOfRounds = frame.readShort();
+            gameSetup.playerIndex = frame.readByte();
+            gameSetup.usernames = new String[frame.readByte()];
+            for( int i = 0; i < gameSetup.usernames.length; i++ ) {
+                gameSetup.usernames[i] = frame.readString();
+            }
+            System.out.println("\nStarting " + ( gameSetup.isRanked ? "Ranked" : "Simple" ) + " Game with " + gameSetup.usernames.length + " players.");
         } catch(IOException e) {
             System.err.println("Failed to get game creation message.");
+            resumeSession(scanner);
+            return null;
         }
-        // Gets number of players
-        int numberOfPlayersInGame = 0;
-        for( char c: message.toCharArray() ) {
-            if( Character.isDigit(c) ) {
-                numberOfPlayersInGame = Character.getNumericValue(c);
-            }
-        }
-        return numberOfPlayersInGame;
+        return gameSetup;
     }
 
-    private static void gameStart(DataInputStream inputStream, DataOutputStream outputStream, Scanner scanner, int numberOfPlayersInGame) {
-        // Play the rounds
-        while (true) {
-            int count = numberOfPlayersInGame;
-            try {
-                // Gets & prints round start message
-                String message = inputStream.readUTF();
-                System.out.print(message);
-                // Gets & prints turn message
-                message = inputStream.readUTF();
-                count--;
-                System.out.print(message);
-                while( !message.startsWith("Its your turn") ) {
-                    message = inputStream.readUTF();
-                    System.out.print(message);
-                    count--;
-                }
-            } catch(IOException e) {
-                System.err.println("Failed to receive prompt from server.");
-            }
-
-            // Gets guess
-            int guess = scanner.nextInt();
-            // Consumes the \n left by scanner.nextInt()
-            scanner.nextLine();
-
-            try {
-                // Send guess to server
-                outputStream.writeInt(guess);
-            } catch(IOException e) {
-                System.err.println("Failed to send guess to server.");
+    // Reconnects after the connection to the server was lost and carries on wherever the server says the session is:
+    // in a queue or a game the game start comes (again), after a game the end game menu is answered again
+    private static void resumeSession(Scanner scanner) {
+        byte status = reconnect();
+        if( status == Protocol.SESSION_RESUMED ) {
+            GameSetup gameSetup = waitForGame(INPUT_STREAM, scanner);
+            if( gameSetup != null ) {
+                gameStart(INPUT_STREAM, OUTPUT_STREAM, scanner, gameSetup);
             }
+        } else if( status == Protocol.SESSION_RESUMED_AFTER_GAME ) {
+            afterGame(INPUT_STREAM, OUTPUT_STREAM, scanner);
+        }
+    }
 
+    // Returns the server's answer to the session token, or INVALID_TOKEN if it could not be reached
+    private static byte reconnect() {
+        if( TOKEN == null ) {
+            return Protocol.INVALID_TOKEN;
+        }
+        try {
+            SOCKET.close();
+        } catch(IOException ignored) {
+        }
+        for( int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++ ) {
             try {
-                // Validate guess
-                String valMessage = inputStream.readUTF();
-                while(valMessage.startsWith("Please select a value within the given range.")) {
-                    System.out.println(valMessage);
-                    System.out.print("> ");
-                    guess = scanner.nextInt();
-                    // Consumes the \n left by scanner.nextInt()
-                    scanner.nextLine();
-                    outputStream.writeInt(guess);
-                    valMessage = inputStream.readUTF();
+                Thread.sleep(RECONNECT_DELAY);
+                System.out.println("Reconnecting to the server (attempt " + attempt + " of " + RECONNECT_ATTEMPTS + ")...");
+                Socket socket = new Socket(HOSTNAME, PORT);
+                DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+                DataOutputStream outputStream = new DataOutputStream(socket.getOutputStream());
+                outputStream.write(Protocol.resume(TOKEN));
+                byte status = Protocol.readFrame(inputStream, Protocol.AUTHENTICATION_RESULT).readByte();
+                if( status == Protocol.INVALID_TOKEN ) {
+                    System.out.println("Your session has expired. Please log in again.");
+                    socket.close();
+                    return status;
                 }
+                SOCKET = socket;
+                INPUT_STREAM = inputStream;
+                OUTPUT_STREAM = outputStream;
+                System.out.println("Reconnected to the server.");
+                return status;
             } catch(IOException e) {
-                System.err.println("Failed to validate guess.");
-            }
-
-            // Prints other users turns
-            while( count > 0 ) {
-                try {
-                    System.out.print(inputStream.readUTF());
-                    count--;
-                } catch(IOException e) {
-                    e.getMessage();
-                }
+                System.err.println("Failed to reconnect to the server.");
+            } catch(InterruptedException e) {
+                throw new RuntimeException(e);
             }
+        }
+        return Protocol.INVALID_TOKEN;
+    }
 
+    private static void gameStart(DataInputStream inputStream, DataOutputStream outputStream, Scanner scanner, GameSetup gameSetup) {
+        // Play the rounds, every message of the game says what it is
+        int currentRoundNumber = 0;
+        while (true) {
+            Frame frame;
             try {
-                // Receive result from server
-                String result = inputStream.readUTF();
-                System.out.println(result);
+                frame = Protocol.readFrame(inputStream);
             } catch(IOException e) {
-                System.err.println("Failed to receive result from server.");
+                System.err.println("Failed to receive game message from server.");
+                resumeSession(scanner);
+                return;
             }
 
             try {
-                // Checks if game ended
-                String message = inputStream.readUTF();
-                if( message.startsWith("\nGame ended") ) {
-                    System.out.print(message);
-                    message = inputStream.readUTF();
-                    if( !message.startsWith("SIMPLE") ) {
-                        System.out.println(message);
+                if( frame.getOpcode() == Protocol.ROUND_START ) {
+                    int roundNumber = frame.readShort();
+                    int lowerBound = frame.readShort();
+                    int upperBound = frame.readShort();
+                    currentRoundNumber = roundNumber;
+                    System.out.print("\nRound " + roundNumber + " of " + gameSetup.numberOfRounds + ":\n");
+                    System.out.print("The target interval is " + lowerBound + ".." + upperBound + ".\n");
+                } else if( frame.getOpcode() == Protocol.TURN ) {
+                    int guessingPlayerIndex = frame.readByte();
+                    if( guessingPlayerIndex == Protocol.ALL_PLAYERS ) {
+                        System.out.print("Everyone is guessing, make your guess.\n> ");
+                        sendGuess(outputStream, scanner, currentRoundNumber);
+                    } else if( guessingPlayerIndex == gameSetup.playerIndex ) {
+                        System.out.print("Its your turn guessing.\n> ");
+                        sendGuess(outputStream, scanner, currentRoundNumber);
+                    } else {
+                        System.out.print(gameSetup.usernames[guessingPlayerIndex] + " is guessing...\n");
+                    }
+                } else if( frame.getOpcode() == Protocol.GUESS_ACK ) {
+                    // Validate guess
+                    if( frame.readByte() == 0 ) {
+                        System.out.println("Please select a value within the given range.");
+                        System.out.print("> ");
+                        sendGuess(outputStream, scanner, currentRoundNumber);
+                    }
+                } else if( frame.getOpcode() == Protocol.ROUND_RESULT ) {
+                    int roundNumber = frame.readShort();
+                    int targetNumber = frame.readShort();
+                    int roundWinnerIndex = frame.readByte();
+                    int guess = frame.readInt();
+                    int distance = frame.readInt();
+                    if( roundWinnerIndex == Protocol.NO_ROUND_WINNER ) {
+                        System.out.println("Nobody guessed in round " + roundNumber + ". The target number was " + targetNumber + ".");
+                    } else if( roundWinnerIndex == gameSetup.playerIndex ) {
+                        System.out.println("You won round " + roundNumber + ". The target number was " + targetNumber + " and you were the closest! You failed by " + distance + ".");
+                    } else {
+                        System.out.println(gameSetup.usernames[roundWinnerIndex] + " won round " + roundNumber + ". The target number was " + targetNumber + " and your guess was " + guess + ". You were " + distance + " away from the target.");
+                    }
+                } else if( frame.getOpcode() == Protocol.GAME_END ) {
+                    int roundsWon = frame.readShort();
+                    int numberOfRounds = frame.readShort();
+                    System.out.print("\nGame ended. You won " + roundsWon + " of " + numberOfRounds + " rounds.");
+                    if( gameSetup.isRanked ) {
+                        printRankDelta(Protocol.readFrame(inputStream, Protocol.RANK_DELTA));
                     }
                     System.out.println();
                     Thread.sleep(CONSOLE_TIMEOUT);
                     afterGame(inputStream, outputStream, scanner);
                     break;
+                } else if( frame.getOpcode() == Protocol.GAME_START ) {
+                    // Sent again when the session was resumed while the game was starting
+                    continue;
+                } else {
+                    System.err.println("Unexpected message " + frame.getOpcode() + " from server.");
                 }
             } catch(IOException e) {
                 System.err.println("Failed to receive game status from server.");
@@ -204,11 +292,64 @@ public class GameClient {
         }
     }
 
+    // The server answers with a guess ack, unless the round was already resolved without this guess
+    private static void sendGuess(DataOutputStream outputStream, Scanner scanner, int roundNumber) throws IOException {
+        // Gets guess
+        int guess = scanner.nextInt();
+        // Consumes the \n left by scanner.nextInt()
+        scanner.nextLine();
+        // Send guess to server
+        outputStream.write(Protocol.guess(roundNumber, guess));
+    }
+
+    private static void printRankDelta(Frame frame) throws IOException {
+        int rankDelta = frame.readInt();
+        int rankPoints = frame.readInt();
+        int previousRankTier = frame.readByte();
+        int rankTier = frame.readByte();
+        if( rankDelta < 0 ) {
+            System.out.println("You lost " + (-rankDelta) + " rank points. Your current rank points are: " + rankPoints + ".");
+        } else {
+            System.out.println("You won " + rankDelta + " rank points. Your current rank points are: " + rankPoints + ".");
+        }
+        if( previousRankTier < rankTier ) {
+            System.out.println("Your rank was increased to tier " + rankTier + "!");
+        } else if( previousRankTier > rankTier ) {
+            System.out.println("Your rank was lowered to tier " + rankTier + ".");
+        } else {
+            System.out.println("Your rank stayed at tier " + rankTier + ".");
+        }
+    }
+
+    // Asks the server for the top players and the player's own position, then prints both
+    private static void printLeaderboard(DataInputStream inputStream, DataOutputStream outputStream) {
+        try {
+            outputStream.write(Protocol.leaderboardQuery(LEADERBOARD_SIZE));
+            outputStream.write(Protocol.positionQuery());
+            Frame frame = Protocol.readFrame(inputStream, Protocol.LEADERBOARD);
+            int numberOfPlayers = frame.readByte();
+            String leaderboard = "\n---------------LEADERBOARD----------------\n";
+            for( int i = 0; i < numberOfPlayers; i++ ) {
+                int position = frame.readInt();
+                int rankPoints = frame.readInt();
+                leaderboard += String.format("%4d. %-32s %6d%n", position, frame.readString(), rankPoints);
+            }
+            frame = Protocol.readFrame(inputStream, Protocol.POSITION);
+            int position = frame.readInt();
+            int numberOfRankedPlayers = frame.readInt();
+            int rankPoints = frame.readInt();
+            leaderboard += "You are number " + position + " of " + numberOfRankedPlayers + " players, with " + rankPoints + " rank points.\n";
+            System.out.print(leaderboard);
+        } catch(IOException e) {
+            System.err.println("Failed to get the leaderboard from server.");
+        }
+    }
+
     private static void clearConsole() {
         System.out.println("\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n\n");
     }
 
-    private static void gameTypeSelection(DataOutputStream outputStream, Scanner scanner) {
+    private static void gameTypeSelection(DataInputStream inputStream, DataOutputStream outputStream, Scanner scanner) {
         // Print game type selection menu
         printGameSelectionMenu();
         // Gets choice
@@ -216,7 +357,11 @@ public class GameClient {
         // Consumes the \n left by scanner.nextInt()
         scanner.nextLine();
         while( (choice != 1) && (choice != 2) ) {
-            System.out.println("ERROR - Invalid input. Please select a valid option.");
+            if( choice == 3 ) {
+                printLeaderboard(inputStream, outputStream);
+            } else {
+                System.out.println("ERROR - Invalid input. Please select a valid option.");
+            }
             printGameSelectionMenu();
             choice = scanner.nextInt();
             // Consumes the \n left by scanner.nextInt()
@@ -230,7 +375,7 @@ public class GameClient {
         }
         try {
             // Sends game type selection to server
-            outputStream.writeInt(choice);
+            outputStream.write(Protocol.gameType(choice));
             Thread.sleep(CONSOLE_TIMEOUT);
             clearConsole();
         } catch(InterruptedException e) {
@@ -255,49 +400,32 @@ public class GameClient {
             // Consumes the \n left by scanner.nextInt()
             scanner.nextLine();
         }
-        // Send authentication selection to server
-        outputStream.writeInt(choice);
         clearConsole();
 
-        if( choice == 1 ) {     // LOGIN
-            // Prints Login Menu & returns username and password
-            String[] userData = printLoginMenu(scanner);
-            // Sends login user data to server
-            outputStream.writeUTF(userData[0]);
-            outputStream.writeUTF(userData[1]);
-            // Checks for server login validation
-            String serverMessage = inputStream.readUTF();
-            while(!serverMessage.startsWith("OK")) {
-                System.out.println(serverMessage);
-                // Prints login menu & returns username and password
-                userData = printLoginMenu(scanner);
-                // Sends login user data to server
-                outputStream.writeUTF(userData[0]);
-                outputStream.writeUTF(userData[1]);
-                // Gets server validation
-                serverMessage = inputStream.readUTF();
+        byte status;
+        do {
+            // Prints Login or Register Menu & returns username and password
+            String[] userData = ( choice == 1 ) ? printLoginMenu(scanner) : printRegistrationMenu(scanner);
+            // Sends user data to server
+            outputStream.write(Protocol.authenticate(choice, userData[0], userData[1]));
+            // Checks for server validation
+            Frame frame = Protocol.readFrame(inputStream, Protocol.AUTHENTICATION_RESULT);
+            status = frame.readByte();
+            TOKEN = frame.readString();
+            if( status == Protocol.LOGIN_SUCCESSFUL ) {
+                System.out.println("OK - Login successful. Welcome back " + userData[0] + ".");
+            } else if( status == Protocol.REGISTRATION_SUCCESSFUL ) {
+                System.out.println("OK - Registration successful.");
+            } else if( status == Protocol.INVALID_LOGIN ) {
+                System.out.println("Invalid username, password or user is already logged in. Please try again.");
+            } else if( status == Protocol.USERNAME_TAKEN ) {
+                System.out.println("Username already exists. Please try again.");
+            } else if( status == Protocol.SERVER_BUSY ) {
+                System.out.println("The server is busy. Please try again in a moment.");
+            } else {
+                System.out.println("Username and password must have 1 to 32 characters and no commas. Please try again.");
             }
-            System.out.println(serverMessage);
-        } else  {           // REGISTER
-            // Prints Register Menu & returns username and password
-            String[] userData = printRegistrationMenu(scanner);
-            // Sends registration data to server
-            outputStream.writeUTF(userData[0]);
-            outputStream.writeUTF(userData[1]);
-            // Checks for server registration validation
-            String serverMessage = inputStream.readUTF();
-            while(!serverMessage.startsWith("OK")) {
-                System.out.println(serverMessage);
-                // Prints registration menu & returns username and password
-                userData = printRegistrationMenu(scanner);
-                // Sends registration data to server
-                outputStream.writeUTF(userData[0]);
-                outputStream.writeUTF(userData[1]);
-                // Gets server validation
-                serverMessage = inputStream.readUTF();
-            }
-            System.out.println(serverMessage);
-        }
+        } while( status != Protocol.LOGIN_SUCCESSFUL && status != Protocol.REGISTRATION_SUCCESSFUL );
         Thread.sleep(CONSOLE_TIMEOUT);
         clearConsole();
     }
@@ -316,6 +444,7 @@ public class GameClient {
         menu += "Please select a game type:\n";
         menu += "1 - Simple\n";
         menu += "2 - Ranked\n";
+        menu += "3 - Leaderboard\n";
         menu += "> ";
         System.out.print(menu);
     }
@@ -356,4 +485,12 @@ public class GameClient {
 
         return userData;
     }
+
+    // What the game start message told about the game
+    private static class GameSetup {
+        private boolean isRanked = false;
+        private int numberOfRounds = 0;
+        private int playerIndex = -1;
+        private String[] usernames = new String[0];
+    }
 }
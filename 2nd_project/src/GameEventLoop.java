@@ -0,0 +1,284 @@
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+// Event engine: one thread serves the connections and runs the games assigned to it, nothing on it ever blocks
+public class GameEventLoop implements Runnable {
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    public GameEventLoop() throws IOException {
+        this.selector = Selector.open();
+    }
+
+    // Runs the task on this event loop's thread, can be called from any thread
+    public void execute(Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    // Runs the task on this event loop's thread once the delay passed, the server's timer wheel keeps the deadline
+    public Timeout schedule(long delayMillis, Runnable task) {
+        return GameServer.getTimerWheel().schedule(delayMillis, () -> this.execute(task));
+    }
+
+    // Closes the connection on this event loop's thread, can be called from any thread. A game waiting for the player
+    // learns it right away, the player is logged out once no game holds it.
+    public void disconnect(PlayerConnection connection) {
+        this.execute(() -> {
+            if( connection.getState() == PlayerConnection.State.IN_GAME ) {
+                this.closeConnection(connection);
+            } else {
+                this.endSession(connection);
+            }
+            this.dispatchInput(connection);
+        });
+    }
+
+    // Takes over an authenticated connection, the rest of the player's session runs on this event loop
+    public void takeOver(PlayerConnection connection) {
+        connection.setEventLoop(this);
+        connection.getPlayer().setConnection(connection);
+        this.execute(() -> {
+            try {
+                connection.getChannel().register(this.selector, SelectionKey.OP_READ, connection);
+            } catch(ClosedChannelException e) {
+                this.endSession(connection);
+                return;
+            }
+            this.writeMessages(connection);
+            connection.setState(PlayerConnection.State.IN_QUEUE);
+            try {
+                GameServer.enterMatchmaking(connection.getPlayer(), connection.isRankedGame());
+            } catch(IOException e) {
+                Log.error("Failed to move player " + connection.getPlayer().getUsername() + " to matchmaking.");
+                this.endSession(connection);
+            }
+        });
+    }
+
+    // Moves a resumed session from the previous connection (served by this event loop) to the new one, which this event
+    // loop serves from now on. The previous connection is closed without logging the player out.
+    public void resume(PlayerConnection connection, PlayerConnection previousConnection) {
+        connection.setEventLoop(this);
+        this.execute(() -> {
+            Player player = connection.getPlayer();
+            boolean isAfterGame = isInSession(previousConnection);
+            // Queued before the connection is the player's, so nothing the game sends can come first
+            connection.queueFrame(Protocol.authenticationResult(isAfterGame ? Protocol.SESSION_RESUMED_AFTER_GAME : Protocol.SESSION_RESUMED, player.getToken()));
+            connection.setRankedGame(previousConnection.isRankedGame());
+            if( !isAfterGame ) {
+                // Before the connection is the player's, so a game starting meanwhile is not overwritten
+                connection.setState(PlayerConnection.State.IN_QUEUE);
+            }
+            player.setConnection(connection);
+            this.closeConnection(previousConnection);
+
+            try {
+                connection.getChannel().register(this.selector, SelectionKey.OP_READ, connection);
+            } catch(ClosedChannelException e) {
+                this.closeConnection(connection);
+                return;
+            }
+            // A game that started meanwhile either sees the new connection or is seen here. One that ended meanwhile may
+            // have opened the end game menu on the previous connection, it sends the player there again.
+            Game currentGame = player.getGame();
+            Game game = currentGame != null ? currentGame : previousConnection.getGame();
+            if( isAfterGame ) {
+                this.openSession(connection);
+            } else if( game != null ) {
+                connection.setGame(game);
+                connection.setState(PlayerConnection.State.IN_GAME);
+                game.getEventLoop().execute(() -> game.onResume(player));
+            }
+            this.writeMessages(connection);
+        });
+    }
+
+    // Writes the connection's queued messages on this event loop's thread
+    public void flush(PlayerConnection connection) {
+        this.execute(() -> {
+            connection.clearFlushRequest();
+            this.writeMessages(connection);
+        });
+    }
+
+    @Override
+    public void run() {
+        Log.info(Thread.currentThread().getName() + " started.");
+        //noinspection InfiniteLoopStatement
+        while(true) {
+            try {
+                this.selector.select();
+            } catch(IOException e) {
+                Log.error("Failed to select ready connections.");
+                continue;
+            }
+
+            Runnable task;
+            while( (task = this.tasks.poll()) != null ) {
+                try {
+                    task.run();
+                } catch(RuntimeException e) {
+                    // One broken game or session must not stop the others on this event loop
+                    Log.error("A task failed on the event loop.", e);
+                }
+            }
+
+            Iterator<SelectionKey> selectedKeys = this.selector.selectedKeys().iterator();
+            while( selectedKeys.hasNext() ) {
+                SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                if( !key.isValid() ) {
+                    continue;
+                }
+                PlayerConnection connection = (PlayerConnection) key.attachment();
+                if( key.isWritable() ) {
+                    this.writeMessages(connection);
+                }
+                if( key.isValid() && key.isReadable() ) {
+                    this.readMessages(connection);
+                }
+            }
+        }
+    }
+
+    private void readMessages(PlayerConnection connection) {
+        try {
+            if( connection.readFromChannel() < 0 ) {
+                throw new IOException("Client closed the connection.");
+            }
+        } catch(IOException e) {
+            this.closeConnection(connection);
+        }
+        this.dispatchInput(connection);
+    }
+
+    // Hands new input (or the end of the connection) to whoever is waiting for it, in a queue nothing is expected
+    private void dispatchInput(PlayerConnection connection) {
+        PlayerConnection.State state = connection.getState();
+        if( state == PlayerConnection.State.IN_GAME ) {
+            Game game = connection.getGame();
+            game.getEventLoop().execute(() -> game.onInput(connection.getPlayer()));
+        } else if( isInSession(connection) ) {
+            this.handleSessionInput(connection);
+        }
+    }
+
+    // Waits for the end game menu choice of the connection's player, the same way PlayerSessionRunnable does with a
+    // thread. A player that has not queued again when the session times out is disconnected.
+    public void startSession(PlayerConnection connection) {
+        this.execute(() -> this.openSession(connection));
+    }
+
+    private void openSession(PlayerConnection connection) {
+        if( connection.getSessionTimeout() != null ) {
+            // A resumed session may be opened twice
+            connection.getSessionTimeout().cancel();
+        }
+        connection.setGame(null);
+        connection.setState(PlayerConnection.State.AFTER_GAME_MENU);
+        connection.setSessionTimeout(this.schedule(GameServer.SESSION_TIMEOUT_MILLIS, () -> {
+            if( isInSession(connection) ) {
+                Log.warn("Player " + connection.getPlayer().getUsername() + " did not answer the end game menu in time.");
+                this.endSession(connection);
+            }
+        }));
+        // The choice may already be buffered
+        this.handleSessionInput(connection);
+    }
+
+    private void handleSessionInput(PlayerConnection connection) {
+        Player player = connection.getPlayer();
+        try {
+            Frame frame;
+            while( isInSession(connection) && (frame = connection.pollFrame()) != null ) {
+                if( frame.getOpcode() == Protocol.GUESS ) {
+                    // Missed the last round's deadline
+                    continue;
+                }
+                byte[] answer = GameServer.answerLeaderboardQuery(player, frame);
+                if( answer != null ) {
+                    connection.queueFrame(answer);
+                    this.writeMessages(connection);
+                    continue;
+                }
+                if( connection.getState() == PlayerConnection.State.AFTER_GAME_MENU ) {
+                    int choice = frame.getOpcode() == Protocol.AFTER_GAME ? frame.readByte() : 0;
+                    if( choice == 2 ) {
+                        this.endSession(connection);
+                        return;
+                    } else if( choice == 1 ) {
+                        Log.info(player.getUsername() + " chose to play again.");
+                        connection.setState(PlayerConnection.State.GAME_TYPE_SELECTION);
+                    } else {
+                        throw new IOException("Unexpected input from player " + player.getUsername() + ".");
+                    }
+                } else {
+                    int choice = frame.getOpcode() == Protocol.GAME_TYPE ? frame.readByte() : 0;
+                    if( choice != 1 && choice != 2 ) {
+                        throw new IOException("Unexpected client game type selection.");
+                    }
+                    connection.getSessionTimeout().cancel();
+                    connection.setState(PlayerConnection.State.IN_QUEUE);
+                    GameServer.enterMatchmaking(player, choice == 2);
+                }
+            }
+        } catch(IOException e) {
+            Log.error("Failed to move player " + player.getUsername() + " to matchmaking: " + e.getMessage());
+            this.endSession(connection);
+        }
+    }
+
+    // Once queued, the player's next input belongs to its game, which may already be running on another event loop
+    private static boolean isInSession(PlayerConnection connection) {
+        PlayerConnection.State state = connection.getState();
+        return state == PlayerConnection.State.AFTER_GAME_MENU || state == PlayerConnection.State.GAME_TYPE_SELECTION;
+    }
+
+    private void writeMessages(PlayerConnection connection) {
+        SelectionKey key = connection.getChannel().keyFor(this.selector);
+        try {
+            boolean isDone = connection.writeToChannel();
+            if( key != null && key.isValid() ) {
+                key.interestOps(isDone ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+            }
+        } catch(IOException e) {
+            this.closeConnection(connection);
+            this.dispatchInput(connection);
+        }
+    }
+
+    // Closes the channel without logging the player out: its client can resume the session with its token, until the
+    // heartbeat monitor evicts it
+    private void closeConnection(PlayerConnection connection) {
+        if( !connection.isClosed() ) {
+            connection.setClosed();
+            if( connection.getSessionTimeout() != null ) {
+                connection.getSessionTimeout().cancel();
+            }
+            SelectionKey key = connection.getChannel().keyFor(this.selector);
+            if( key != null ) {
+                key.cancel();
+            }
+            try {
+                connection.getChannel().close();
+            } catch(IOException ignored) {
+            }
+        }
+    }
+
+    // Closes the channel and logs the player out. A connection the session was moved away from no longer speaks for the
+    // player.
+    private void endSession(PlayerConnection connection) {
+        this.closeConnection(connection);
+        Player player = connection.getPlayer();
+        if( player.getConnection() == connection && GameServer.isLoggedIn(player) ) {
+            GameServer.playerLogout(player);
+        }
+    }
+}
\ No newline at end of file
@@ -5,74 +5,90 @@ public class GameRunnable implements Runnable {
     private final List<Player> players;
     private final int gameIndex;
     private final boolean isRanked;
+    private long createdAt = 0;
 
     public GameRunnable(List<Player> players, boolean isRanked) {
         this.players = players;
-        this.gameIndex = GameServer.getNumberOfActiveGames();
+        this.gameIndex = GameServer.nextGameIndex();
         this.isRanked = isRanked;
     }
 
     @Override
     public void run() {
+        for( Player player: this.players ) {
+            GameServer.takeOverReading(player);
+        }
+        Game game = this.createGame();
+        this.notifyGameStartToPlayers(game);
+        game.start();
+
+        Log.info("Game " + this.gameIndex + " finished.");
+        Metrics.GAME_DURATION.recordSince(this.createdAt);
+
+        this.afterGame();
+    }
+
+    // Event engine: the game runs on the event loop without holding a thread, this returns as soon as it started
+    public void startOnEventLoop(GameEventLoop eventLoop) {
+        Game game = this.createGame();
+        // The players' input goes to the game from now on
+        for( Player player: this.players ) {
+            player.getConnection().setGame(game);
+            player.getConnection().setState(PlayerConnection.State.IN_GAME);
+        }
+        this.notifyGameStartToPlayers(game);
+        game.startOnEventLoop(eventLoop, () -> {
+            Log.info("Game " + this.gameIndex + " finished.");
+            Metrics.GAME_DURATION.recordSince(this.createdAt);
+            this.afterGame();
+        });
+    }
+
+    private Game createGame() {
+        this.createdAt = System.nanoTime();
+        Metrics.GAMES.increment();
         Game game;
         // Creates game
         if( this.isRanked ) {
             game = new RankedGame(this.players, gameIndex);
-            System.out.println("Game " + this.gameIndex + " (Ranked) created with " + this.players.size() + " players.");
+            Log.info("Game " + this.gameIndex + " (Ranked) created with " + this.players.size() + " players.");
         } else {
             game = new SimpleGame(this.players, gameIndex);
-            System.out.println("Game " + this.gameIndex + " (Simple) created with " + this.players.size() + " players.");
+            Log.info("Game " + this.gameIndex + " (Simple) created with " + this.players.size() + " players.");
+        }
+
+        // A player that resumes its session from now on is sent back to this game
+        for( Player player: this.players ) {
+            player.setGame(game);
         }
 
         // Print useful server information
         GameServer.printServerStatus();
-
-        this.notifyGameStartToPlayers();
-        game.start();
-
-        System.out.println("Game " + this.gameIndex + " finished.");
-
-        this.afterGame();
+        return game;
     }
 
     private void afterGame() {
         GameServer.decrementNumberOfActiveGames();
         for(Player player: this.players) {
-            try {
-                // Gets client end game choice
-                int choice = player.getSocketInputStream().readInt();
-                if( choice == 2 ) {
-                    GameServer.playerLogout(player);
-                } else if( choice == 1 ) {
-                    System.out.println(player.getUsername() + " chose to play again.");
-                    // Handling game type selection
-                    boolean isRankedGame = GameServer.gameTypeSelection(player);
-                    // Add player to respective queue
-                    if(isRankedGame) {
-                        GameServer.addPlayerToRankedQueue(player);
-                    } else {
-                        GameServer.addPlayerToSimpleQueue(player);
-                    }
-
-                    // Print useful server information
-                    GameServer.printServerStatus();
-
-                    // Game setup
-                    GameServer.setupGame(GameServer.getGameThreadPool(), isRankedGame);
-                } else {
-                    System.err.println("Unexpected input from player " + player.getUsername() + ".");
-                }
-            } catch(IOException e) {
-                System.err.println("Failed to get endgame choice from player " + player.getUsername() + ".");
+            player.setGame(null);
+            PlayerConnection connection = player.getConnection();
+            if( connection != null ) {
+                // Event engine: the menu choice is handled on the player's event loop when it arrives
+                connection.getEventLoop().startSession(connection);
+            } else {
+                // Each player answers the end game menu on its own session thread, so no one waits for the others
+                GameServer.awaitReader(player);
+                GameServer.getSessionThreadPool().execute( new PlayerSessionRunnable(player) );
             }
         }
     }
 
-    private void notifyGameStartToPlayers() {
-        // Notifies the players the game is starting
-        for( Player player: this.players ) {
+    private void notifyGameStartToPlayers(Game game) {
+        // Notifies the players the game is starting, each one learns its own index in the team. The message is
+        // flushed with the first round.
+        for( int i = 0; i < this.players.size(); i++ ) {
             try {
-                player.getSocketOutputStream().writeUTF("\nStarting " + ( (this.isRanked) ? ("Ranked") : ("Simple") ) + " Game with " + players.size() + " players.");
+                this.players.get(i).send(Protocol.gameStart(this.isRanked, game.getNumberOfRounds(), this.players, i));
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
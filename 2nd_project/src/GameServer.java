@@ -1,168 +1,510 @@
 import java.io.*;
-import java.net.ServerSocket;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.stream.Collectors;
 
 public class GameServer {
     private static final int PORT = 5000;
+    private static final int DEFAULT_METRICS_PORT = 5001;
     private static final int MAX_THREADS = 8;
     private static final String REGISTRATION_FILE = "players.csv";
+    private static final String REGISTRATION_JOURNAL_FILE = "players.journal";
+    private static final String REGISTRATION_DATA_FILE = "players.dat";
+    private static final String REGISTRATION_INDEX_FILE = "players.idx";
+    private static final int MAX_CREDENTIAL_LENGTH = 32;
     private static final int MIN_RANKED_TEAM_SIZE = 3;
     private static final int MIN_SIMPLE_TEAM_SIZE = 2;
     private static final int MAX_TEAM_SIZE = 8;
-    private static final int MAX_PLAYERS = 50;
-    private static final List<Player> registeredPlayers = new ArrayList<>();
-    private static final List<Player> loggedInPlayers = new ArrayList<>();
+    private static final int DEFAULT_MAX_PLAYERS = 50;
+    private static final int ACCEPT_BACKLOG = 1024;
+    private static final int DEFAULT_AUTHENTICATION_QUEUE = 1024;
+    // Most players a leaderboard query returns
+    private static final int MAX_LEADERBOARD_SIZE = 100;
+    // Every timeout of the server is kept by one timer wheel, 512 ticks of 100 ms per turn of the wheel
+    private static final long TIMER_TICK_MILLIS = 100;
+    private static final int TIMER_WHEEL_SIZE = 512;
+    // Time a player has to leave the end game menu (play again or disconnect), and to be matched once queued
+    protected static final long SESSION_TIMEOUT_MILLIS = 60000;
+    private static final long QUEUE_TIMEOUT_MILLIS = 600000;
+    // Registered accounts and logged in sessions, both keyed by username
+    private static final ConcurrentMap<String, Player> registeredPlayers = new ConcurrentHashMap<>();
+    private static final ConcurrentMap<String, Player> loggedInPlayers = new ConcurrentHashMap<>();
+    // Sessions of the logged in players by token, a client that reconnects resumes its session through it. A token
+    // expires with its session, when its client went silent for as long as the heartbeat monitor waits.
+    private static final SessionTokens sessionTokens = new SessionTokens(ConnectionMonitoringRunnable.HEARTBEAT_TIMEOUT_NANOS);
+    // Registered players by rank points, updated as ranked games settle
+    private static final Leaderboard leaderboard = new Leaderboard();
     private static final List<Player> simpleGameQueue = new ArrayList<>();
-    private static final List<Player> rankedGameQueue = new ArrayList<>();
-    private static int numberOfActiveGames = 0;
-    private static final ExecutorService gameThreadPool = Executors.newFixedThreadPool(MAX_THREADS);
-    private static final ReentrantLock lock = new ReentrantLock();
+    private static final RankedMatchmakingRunnable rankedMatchmaking = new RankedMatchmakingRunnable(MIN_RANKED_TEAM_SIZE, MAX_TEAM_SIZE);
+    private static final AtomicInteger numberOfActiveGames = new AtomicInteger(0);
+    private static final AtomicInteger numberOfCreatedGames = new AtomicInteger(0);
+    private static final TimerWheelRunnable timerWheel = new TimerWheelRunnable(TIMER_TICK_MILLIS, TIMER_WHEEL_SIZE);
+    private static PlayerStore playerStore;
+    private static GroupCommitRunnable groupCommitRunnable;
+    private static int maxPlayers = DEFAULT_MAX_PLAYERS;
+    private static boolean isSimultaneousRounds = false;
+    private static ExecutorService gameThreadPool;
+    // Sessions in the end game menu, each read may block for up to a minute
+    private static ExecutorService sessionThreadPool;
+    // Resumed sessions moving to their new socket, unbounded since it never waits on a client
+    private static final ExecutorService resumeExecutor = Executors.newCachedThreadPool();
+    // Hashes and verifies passwords away from the acceptors, a full queue turns new logins away
+    private static ThreadPoolExecutor authenticationExecutor;
+    // Only set with the event engine, games and sessions are spread between the event loops
+    private static GameEventLoop[] eventLoops = null;
+    private static final AtomicInteger numberOfAssignedEventLoops = new AtomicInteger(0);
+    // Blocking engine: players handed to a game or a session that waits for a thread, so nothing reads their sockets yet
+    private static final Set<Player> unreadPlayers = new HashSet<>();
+    private static final ReentrantLock unreadPlayersLock = new ReentrantLock();
+    // Guards only the simple game queue and no I/O happens while it is held, the ranked queues have their own locks
+    private static final ReentrantLock simpleGameQueueLock = new ReentrantLock();
 
     public static void main(String[] args) {
-        try (ServerSocket serverSocket = new ServerSocket(PORT)) {
-            System.out.println("\nServer is listening on port " + PORT);
-            System.out.println("Waiting for players to connect...");
+        // Server log, "trace" (every guess), "debug" (queues and server status), "info", "warn" or "error". A full log
+        // buffer drops new messages ("drop") or makes the logging threads wait ("block").
+        configureLog(getOption(args, "--log-level", "info"), getOption(args, "--log-overflow", "drop"));
+        // Port of the local metrics endpoint (http://localhost:PORT/metrics), 0 turns it off
+        int metricsPort = Integer.parseInt(getOption(args, "--metrics-port", String.valueOf(DEFAULT_METRICS_PORT)));
+        // Thread model for games and player sessions, "fixed" or "virtual"
+        String executorMode = getOption(args, "--executor", "fixed");
+        gameThreadPool = createExecutor(executorMode);
+        sessionThreadPool = createExecutor(executorMode);
+        // Player storage, "journal" (players.csv + players.journal) or "mapped" (players.dat + players.idx)
+        String storeMode = getOption(args, "--store", "journal");
+        playerStore = createPlayerStore(storeMode);
+
+        // Game engine, "blocking" (a thread per running game and per player in the end game menu) or "event" (a few event loops run every game)
+        String engineMode = getOption(args, "--engine", "blocking");
+        int numberOfEventLoops = Integer.parseInt(getOption(args, "--event-loops", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        // Round mode, "turns" (players guess one after the other) or "simultaneous" (every player guesses at once)
+        String roundMode = getOption(args, "--rounds", "turns");
+        isSimultaneousRounds = roundMode.equals("simultaneous");
+
+        // Number of threads accepting and authenticating connections
+        int numberOfAcceptors = Integer.parseInt(getOption(args, "--acceptors", "1"));
+        maxPlayers = Integer.parseInt(getOption(args, "--max-players", String.valueOf(DEFAULT_MAX_PLAYERS)));
+        // Password hashing, half the cores by default so a login storm leaves the others to the games
+        int numberOfAuthenticationThreads = Integer.parseInt(getOption(args, "--auth-threads", String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / 2))));
+        int authenticationQueueSize = Integer.parseInt(getOption(args, "--auth-queue", String.valueOf(DEFAULT_AUTHENTICATION_QUEUE)));
+        PasswordHasher.setIterations(Integer.parseInt(getOption(args, "--hash-iterations", String.valueOf(PasswordHasher.DEFAULT_ITERATIONS))));
+        authenticationExecutor = createAuthenticationExecutor(numberOfAuthenticationThreads, authenticationQueueSize);
+
+        List<ServerSocketChannel> serverSocketChannels = new ArrayList<>();
+        try {
+            openServerSocketChannels(serverSocketChannels, numberOfAcceptors);
+            Log.info("Server is listening on port " + PORT);
+            if( engineMode.equals("event") ) {
+                createEventLoops(numberOfEventLoops);
+                Log.info("Games and sessions run on " + numberOfEventLoops + " event loop/s.");
+            } else {
+                if( !engineMode.equals("blocking") ) {
+                    Log.warn("Unknown engine " + engineMode + ", using blocking.");
+                }
+                Log.info("Games and sessions run on " + executorMode + " threads.");
+            }
+            if( !isSimultaneousRounds && !roundMode.equals("turns") ) {
+                Log.warn("Unknown round mode " + roundMode + ", using turns.");
+                roundMode = "turns";
+            }
+            Log.info("Rounds are played in " + roundMode + ".");
+            Log.info("Players are stored with the " + storeMode + " store.");
+            Log.info(numberOfAcceptors + " acceptor thread/s share " + serverSocketChannels.size() + " listening socket/s.");
+            Log.info(numberOfAuthenticationThreads + " authentication thread/s hash passwords, up to " + authenticationQueueSize + " login/s wait for them.");
+            Log.info("Waiting for players to connect...");
 
             loadRegisteredPlayers();
+            if( metricsPort != 0 ) {
+                startMetricsEndpoint(metricsPort);
+            }
+
+            // Starts the thread that fires the turn, end game menu and queue timeouts
+            Thread timerWheelThread = new Thread( timerWheel, "Timer Wheel Thread" );
+            timerWheelThread.start();
+
+            // Starts the thread that commits rank changes to the player store
+            groupCommitRunnable = new GroupCommitRunnable(playerStore);
+            Thread groupCommitThread = new Thread( groupCommitRunnable, "Group Commit Thread" );
+            groupCommitThread.start();
+
+            // Starts ranked matchmaking thread, which widens the rank window for players that waited too long
+            Thread rankedMatchmakingThread = new Thread( rankedMatchmaking, "Ranked Matchmaking Thread" );
+            rankedMatchmakingThread.start();
 
             // Starts Player connection monitoring thread
             ConnectionMonitoringRunnable connectionMonitoringRunnable = new ConnectionMonitoringRunnable();
             Thread connectionMonitoringThread = new Thread( connectionMonitoringRunnable, "Connection Monitoring Thread" );
             connectionMonitoringThread.start();
 
-            //noinspection InfiniteLoopStatement
-            while(true) {
-                Socket socket = serverSocket.accept();
-                if(loggedInPlayers.size() > MAX_PLAYERS) {
-                    System.out.println("Server maximum number of players reached.\nRejecting Client connection.");
-                    socket.close();
-                    continue;
+            // Starts the acceptor threads, each accepts and authenticates connections without blocking on any of them
+            List<Thread> connectionAcceptorThreads = new ArrayList<>();
+            for( int i = 0; i < numberOfAcceptors; i++ ) {
+                ServerSocketChannel serverSocketChannel = serverSocketChannels.get(i % serverSocketChannels.size());
+                ConnectionAcceptorRunnable connectionAcceptorRunnable = new ConnectionAcceptorRunnable(serverSocketChannel);
+                Thread connectionAcceptorThread = new Thread( connectionAcceptorRunnable, "Connection Acceptor Thread " + (i + 1) );
+                connectionAcceptorThread.start();
+                connectionAcceptorThreads.add(connectionAcceptorThread);
+            }
+            for( Thread connectionAcceptorThread: connectionAcceptorThreads ) {
+                connectionAcceptorThread.join();
+            }
+        } catch(IOException e) {
+            Log.error("Server exception: " + e.getMessage(), e);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for( ServerSocketChannel serverSocketChannel: serverSocketChannels ) {
+                try {
+                    serverSocketChannel.close();
+                } catch(IOException ignored) {
                 }
-                System.out.println("\nNew player connected: " + socket);
+            }
+        }
+    }
 
-                Player player = new Player(null, null, socket);
+    // Opens one listening socket per acceptor when the port can be shared (SO_REUSEPORT), each with its own backlog
+    // and the kernel spreading new connections between them. Otherwise every acceptor shares a single listening socket.
+    private static void openServerSocketChannels(List<ServerSocketChannel> serverSocketChannels, int numberOfAcceptors) throws IOException {
+        do {
+            ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+            serverSocketChannels.add(serverSocketChannel);
+            boolean isPortShared = numberOfAcceptors > 1 && serverSocketChannel.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            if( isPortShared ) {
+                serverSocketChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            serverSocketChannel.bind(new InetSocketAddress(PORT), ACCEPT_BACKLOG);
+            if( !isPortShared ) {
+                break;
+            }
+        } while( serverSocketChannels.size() < numberOfAcceptors );
+    }
 
-                // Player Authentication
-                playerAuthentication(player);
+    private static String getOption(String[] args, String name, String defaultValue) {
+        for( String arg: args ) {
+            if( arg.startsWith(name + "=") ) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
 
-                // Handling game type selection
-                boolean isRankedGame = gameTypeSelection(player);
-                // Add player to respective queue
-                if(isRankedGame) {
-                    addPlayerToRankedQueue(player);
-                } else {
-                    addPlayerToSimpleQueue(player);
-                }
+    private static void startMetricsEndpoint(int metricsPort) {
+        // Counts are read without locking, like the server status
+        Metrics.gauge("active_games", "Games being played.", GameServer::getNumberOfActiveGames);
+        Metrics.gauge("logged_in_players", "Players logged in.", () -> loggedInPlayers.size());
+        Metrics.gauge("session_tokens", "Session tokens in the token -> session index.", sessionTokens::getNumberOfSessions);
+        Metrics.gauge("simple_queue_players", "Players in the simple game queue.", GameServer::getSimpleGameQueueSize);
+        Metrics.gauge("ranked_queue_players", "Players in the ranked game queues.", GameServer::getRankedGameQueueSize);
+        Metrics.gauge("pending_timeouts", "Timeouts pending on the timer wheel.", timerWheel::getNumberOfPendingTimeouts);
+        Metrics.gauge("authentication_queue", "Logins and registrations waiting for an authentication thread.", () -> authenticationExecutor.getQueue().size());
+        Metrics.gauge("threads", "Live threads of the server, platform threads only.", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        try {
+            Metrics.startEndpoint(metricsPort);
+            Log.info("Metrics are served on http://localhost:" + metricsPort + "/metrics.");
+        } catch(IOException e) {
+            Log.error("Failed to start the metrics endpoint on port " + metricsPort + ": " + e.getMessage());
+        }
+    }
 
-                // Print useful server information
-                printServerStatus();
+    private static void configureLog(String logLevel, String logOverflow) {
+        try {
+            Log.setLevel(Log.Level.valueOf(logLevel.toUpperCase()));
+        } catch(IllegalArgumentException e) {
+            Log.warn("Unknown log level " + logLevel + ", using info.");
+        }
+        if( logOverflow.equals("block") ) {
+            Log.setOverflowPolicy(Log.OverflowPolicy.BLOCK);
+        } else if( !logOverflow.equals("drop") ) {
+            Log.warn("Unknown log overflow policy " + logOverflow + ", using drop.");
+        }
+    }
 
-                // Game setup
-                setupGame(gameThreadPool, isRankedGame);
+    private static ExecutorService createExecutor(String executorMode) {
+        if( executorMode.equals("virtual") ) {
+            try {
+                // One virtual thread per task, looked up at runtime since virtual threads need Java 21
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch(ReflectiveOperationException e) {
+                Log.warn("Virtual threads are not supported by this Java runtime, using one platform thread per task.");
+                return Executors.newCachedThreadPool();
             }
-        } catch(IOException e) {
-            System.out.println("\nServer exception: " + e.getMessage());
-            e.printStackTrace();
+        } else if( !executorMode.equals("fixed") ) {
+            Log.warn("Unknown executor mode " + executorMode + ", using fixed.");
         }
+        return Executors.newFixedThreadPool(MAX_THREADS);
     }
 
-    protected static void printServerStatus() {
+    // Fixed threads and a bounded queue: past its size a login is rejected at once instead of piling up
+    protected static ThreadPoolExecutor createAuthenticationExecutor(int numberOfThreads, int queueSize) {
+        AtomicInteger numberOfCreatedThreads = new AtomicInteger(0);
+        return new ThreadPoolExecutor(numberOfThreads, numberOfThreads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), runnable -> {
+            Thread thread = new Thread(runnable, "Authentication Thread " + numberOfCreatedThreads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private static void createEventLoops(int numberOfEventLoops) throws IOException {
+        eventLoops = new GameEventLoop[numberOfEventLoops];
+        for( int i = 0; i < numberOfEventLoops; i++ ) {
+            eventLoops[i] = new GameEventLoop();
+            Thread eventLoopThread = new Thread( eventLoops[i], "Game Event Loop Thread " + (i + 1) );
+            eventLoopThread.start();
+        }
+    }
+
+    private static PlayerStore createPlayerStore(String storeMode) {
+        PlayerJournal playerJournal = new PlayerJournal(REGISTRATION_FILE, REGISTRATION_JOURNAL_FILE);
+        if( storeMode.equals("mapped") ) {
+            // The journal is only read to migrate its players the first time the mapped store is used
+            return new MappedPlayerStore(REGISTRATION_DATA_FILE, REGISTRATION_INDEX_FILE, playerJournal);
+        } else if( !storeMode.equals("journal") ) {
+            Log.warn("Unknown store " + storeMode + ", using journal.");
+        }
+        return playerJournal;
+    }
+
+    protected static void enterMatchmaking(Player player, boolean isRankedGame) throws IOException {
+        player.setQueuedAt(System.nanoTime());
+        // A player still queued when the timeout fires is taken out of its queue, it is cancelled once the player is matched
+        player.setQueueTimeout(timerWheel.schedule(QUEUE_TIMEOUT_MILLIS, () -> expireQueuedPlayer(player, isRankedGame)));
+
+        // Add player to respective queue, then setup the games it completed
+        List<List<Player>> teams;
+        if(isRankedGame) {
+            teams = addPlayerToRankedQueue(player);
+        } else {
+            addPlayerToSimpleQueue(player);
+            teams = setupSimpleGames();
+        }
+
+        // Print useful server information
+        printServerStatus();
+
+        startGames(gameThreadPool, teams, isRankedGame);
+    }
+
+    // Default action of a queue wait that expired, runs on the timer wheel thread
+    private static void expireQueuedPlayer(Player player, boolean isRankedGame) {
+        // Otherwise the player was matched in the meantime
+        if( leaveQueue(player, isRankedGame) ) {
+            Log.warn("Player " + player.getUsername() + " waited too long in the queue.");
+            disconnectPlayer(player);
+        }
+    }
+
+    // Returns false if the player is not in the queue (anymore)
+    private static boolean leaveQueue(Player player, boolean isRankedGame) {
+        if( isRankedGame ) {
+            return rankedMatchmaking.removePlayer(player);
+        }
         try {
-            lock.lock();
-            System.out.println( numberOfActiveGames + " game/s active." );
-            System.out.println( loggedInPlayers.size() + " player/s connected to the server." );
-            System.out.println( simpleGameQueue.size() + " player/s in the simple game queue." );
-            System.out.println( rankedGameQueue.size() + " player/s in the ranked game queue." );
+            simpleGameQueueLock.lock();
+            return simpleGameQueue.remove(player);
         } finally {
-            lock.unlock();
+            simpleGameQueueLock.unlock();
         }
     }
 
-    private static Map<Integer, List<Player>> groupPlayersByRankTier() {
-        return rankedGameQueue.stream().collect(Collectors.groupingBy(Player::getRankTier));
+    // Takes a player whose client stopped answering out of whatever queue holds it and closes its connection. A game it
+    // plays in forfeits its guesses from then on.
+    protected static void evictPlayer(Player player) {
+        if( leaveQueue(player, false) || leaveQueue(player, true) ) {
+            player.getQueueTimeout().cancel();
+        }
+        disconnectPlayer(player);
     }
 
-    protected static boolean gameTypeSelection(Player player) throws IOException {
+    // Blocking engine: no thread reads the sockets of queued players, or of players whose game or session waits for a
+    // thread, their heartbeats are consumed here. The queue locks keep a game from reading them at the same time, a player
+    // is only read by its game once it left the queue, and by its game or session thread once that took over reading.
+    protected static void drainQueuedHeartbeats() {
+        if( isEventEngine() ) {
+            return;
+        }
         try {
-            lock.lock();
-            int choice = 0;
-            try {
-                // Gets game type selection from client
-                choice = player.getSocketInputStream().readInt();
-            } catch(IOException e) {
-                System.err.println("Failed to get game type selection from server.");
+            simpleGameQueueLock.lock();
+            for( Player player: simpleGameQueue ) {
+                player.drainHeartbeats();
             }
-            if( choice == 1 ) {
-                return false;
-            } else if( choice == 2 ) {
+        } finally {
+            simpleGameQueueLock.unlock();
+        }
+        rankedMatchmaking.forEachQueuedPlayer(Player::drainHeartbeats);
+        try {
+            unreadPlayersLock.lock();
+            for( Player player: unreadPlayers ) {
+                player.drainHeartbeats();
+            }
+        } finally {
+            unreadPlayersLock.unlock();
+        }
+    }
+
+    // Blocking engine: the player's heartbeats are drained with the queued players' until its thread takes over
+    protected static void awaitReader(Player player) {
+        try {
+            unreadPlayersLock.lock();
+            unreadPlayers.add(player);
+        } finally {
+            unreadPlayersLock.unlock();
+        }
+    }
+
+    // Called by the game or session thread before its first read, waits for a drain in progress to end
+    protected static void takeOverReading(Player player) {
+        try {
+            unreadPlayersLock.lock();
+            unreadPlayers.remove(player);
+        } finally {
+            unreadPlayersLock.unlock();
+        }
+    }
+
+    // Logs out a player that holds no game or session thread and closes its connection
+    protected static void disconnectPlayer(Player player) {
+        PlayerConnection connection = player.getConnection();
+        if( connection != null ) {
+            // The event loop logs the player out once no game holds it
+            connection.getEventLoop().disconnect(connection);
+            return;
+        }
+        playerLogout(player);
+        try {
+            player.getSocket().close();
+        } catch(IOException ignored) {
+        }
+    }
+
+    // Blocking engine: moves a resumed session to the socket its client reconnected on. The client learns where its
+    // session is and, in a game, gets the game start and the turn in progress again. The send lock keeps the game from
+    // sending anything until the new socket took over.
+    protected static void resumeSession(Player player, Socket socket) throws IOException {
+        boolean isAfterGame;
+        try {
+            player.getSendLock().lock();
+            Game game = player.getGame();
+            isAfterGame = game == null && !isQueued(player);
+            player.replaceSocket(socket);
+            player.send(Protocol.authenticationResult(isAfterGame ? Protocol.SESSION_RESUMED_AFTER_GAME : Protocol.SESSION_RESUMED, player.getToken()));
+            if( game != null ) {
+                game.resync(player);
+            }
+            player.flush();
+        } finally {
+            player.getSendLock().unlock();
+        }
+        if( isAfterGame ) {
+            // The session thread of the previous socket failed along with it
+            awaitReader(player);
+            sessionThreadPool.execute(new PlayerSessionRunnable(player));
+        }
+    }
+
+    protected static boolean isQueued(Player player) {
+        try {
+            simpleGameQueueLock.lock();
+            if( simpleGameQueue.contains(player) ) {
                 return true;
-            } else {
-                throw new IOException("Unexpected client game type selection.");
             }
         } finally {
-            lock.unlock();
+            simpleGameQueueLock.unlock();
         }
+        return rankedMatchmaking.containsPlayer(player);
     }
 
-    protected static void setupGame(ExecutorService gameThreadPool, boolean isRankedGame) {
+    protected static void printServerStatus() {
+        // Counts are read without locking, the status is only informative. It changes with every login, queue and game,
+        // so it is only built at the debug level.
+        if( !Log.isEnabled(Log.Level.DEBUG) ) {
+            return;
+        }
+        Log.debug("Server status: " + numberOfActiveGames.get() + " game/s active, "
+                + loggedInPlayers.size() + " player/s connected, "
+                + getSimpleGameQueueSize() + " player/s in the simple game queue, "
+                + getRankedGameQueueSize() + " player/s in the ranked game queue.");
+    }
+
+    protected static boolean gameTypeSelection(Player player) throws IOException {
+        int choice = 0;
         try {
-            lock.lock();
-            if(isRankedGame) {
-                Map<Integer, List<Player>> groupedRankedPlayers = groupPlayersByRankTier();
-
-                // Prints grouped players by rank tier
-                for (Map.Entry<Integer, List<Player>> entry : groupedRankedPlayers.entrySet()) {
-                    Integer rankTier = entry.getKey();
-                    List<Player> playerGroup = entry.getValue();
-                    System.out.print("Ranked game queue: Tier " + rankTier + " -> ");
-                    for ( int i = 0; i < playerGroup.size(); i++ ) {
-                        if( i == playerGroup.size() - 1 ) {
-                            System.out.print(playerGroup.get(i).getUsername());
-                        } else {
-                            System.out.print(playerGroup.get(i).getUsername() + ", ");
-                        }
-                    }
-                    System.out.println();
-                }
+            // Gets game type selection from client, answering its leaderboard queries meanwhile
+            long deadline = System.currentTimeMillis() + SESSION_TIMEOUT_MILLIS;
+            Frame frame = player.readFrameBefore(deadline);
+            byte[] answer;
+            while( (answer = answerLeaderboardQuery(player, frame)) != null ) {
+                player.send(answer);
+                player.flush();
+                frame = player.readFrameBefore(deadline);
+            }
+            choice = Protocol.expect(frame, Protocol.GAME_TYPE).readByte();
+        } catch(SocketTimeoutException e) {
+            throw e;
+        } catch(IOException e) {
+            Log.error("Failed to get game type selection from server.");
+        }
+        if( choice == 1 ) {
+            return false;
+        } else if( choice == 2 ) {
+            return true;
+        } else {
+            throw new IOException("Unexpected client game type selection.");
+        }
+    }
 
-                // Starts ranked game
-                for (Map.Entry<Integer, List<Player>> entry : groupedRankedPlayers.entrySet()) {
-                    List<Player> groupedRankedGameQueue = entry.getValue();
-                    while( groupedRankedGameQueue.size() >= MIN_RANKED_TEAM_SIZE ) {
-                        // Divide ranked game group into teams & clears it
-                        List<List<Player>> teams = splitQueueIntoTeams(groupedRankedGameQueue);
-                        // Starts a game for each team
-                        for( List<Player> team: teams ) {
-                            numberOfActiveGames++;
-                            for( Player player: team ) {
-                                rankedGameQueue.remove(player);
-                            }
-                            gameThreadPool.execute( new GameRunnable(team, true) );
-                        }
-                    }
+    // Forms teams out of the simple game queue while holding its lock
+    protected static List<List<Player>> setupSimpleGames() {
+        List<List<Player>> teams = new ArrayList<>();
+        try {
+            simpleGameQueueLock.lock();
+            while( simpleGameQueue.size() >= MIN_SIMPLE_TEAM_SIZE) {
+                // Divide simple game queue into teams & clears it
+                teams.addAll(splitQueueIntoTeams(simpleGameQueue));
+            }
+        } finally {
+            simpleGameQueueLock.unlock();
+        }
+        return teams;
+    }
+
+    protected static void startGames(ExecutorService gameThreadPool, List<List<Player>> teams, boolean isRankedGame) {
+        // Starts a game for each team
+        for( List<Player> team: teams ) {
+            for( Player player: team ) {
+                if( player.getQueueTimeout() != null ) {
+                    player.getQueueTimeout().cancel();
                 }
+                (isRankedGame ? Metrics.RANKED_QUEUE_WAIT : Metrics.SIMPLE_QUEUE_WAIT).recordSince(player.getQueuedAt());
+            }
+            numberOfActiveGames.incrementAndGet();
+            GameRunnable gameRunnable = new GameRunnable(team, isRankedGame);
+            if( isEventEngine() ) {
+                GameEventLoop eventLoop = nextEventLoop();
+                eventLoop.execute( () -> gameRunnable.startOnEventLoop(eventLoop) );
             } else {
-                while( simpleGameQueue.size() >= MIN_SIMPLE_TEAM_SIZE) {
-                    // Divide simple game queue into teams & clears it
-                    List<List<Player>> teams = splitQueueIntoTeams(simpleGameQueue);
-
-                    // Starts a game for each team
-                    for( List<Player> team: teams ) {
-                        numberOfActiveGames++;
-                        gameThreadPool.execute( new GameRunnable(team, false) );
-                    }
+                // The game may wait for a thread of the pool
+                for( Player player: team ) {
+                    awaitReader(player);
                 }
+                gameThreadPool.execute( gameRunnable );
             }
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -183,184 +525,235 @@ public class GameServer {
         queue.clear();
     }
 
-    private static void playerAuthentication(Player player) {
-        try {
-            // Gets authentication selection from client
-            int choice = player.getSocketInputStream().readInt();
-
-            String username = player.getSocketInputStream().readUTF();
-            String password = player.getSocketInputStream().readUTF();
-            if( choice == 1 ) { // LOGIN
-
-                // Player login & login validation
-                while (!playerLogin(username, password, player)) {
-                    player.getSocketOutputStream().writeUTF("Invalid username, password or user is already logged in. Please try again.");
-
-                    username = player.getSocketInputStream().readUTF();
-                    password = player.getSocketInputStream().readUTF();
-                }
-            } else if( choice == 2 ) {        // REGISTER
-
-                // Player registration & registration validation
-                while( !playerRegistration(username, password, player) ) {
-                    player.getSocketOutputStream().writeUTF("Username already exists. Please try again.");
-
-                    username = player.getSocketInputStream().readUTF();
-                    password = player.getSocketInputStream().readUTF();
-                }
-            } else {
-                throw new IOException("Unexpected client authentication selection.");
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
     protected static void addPlayerToSimpleQueue(Player player) throws IOException {
+        // The player is told first, so this message can never arrive after the start of the game
+        player.send(Protocol.queued(false));
+        player.flush();
         try {
-            lock.lock();
+            simpleGameQueueLock.lock();
             simpleGameQueue.add(player);
-            player.getSocketOutputStream().writeUTF("You are now queuing for a simple game.\nWaiting for players...");
         } finally {
-            lock.unlock();
+            simpleGameQueueLock.unlock();
         }
     }
 
-    protected static void addPlayerToRankedQueue(Player player) throws IOException {
-        try {
-            lock.lock();
-            rankedGameQueue.add(player);
-            player.getSocketOutputStream().writeUTF("You are now queuing for a ranked game.\nWaiting for players...");
-        } finally {
-            lock.unlock();
-        }
+    // Returns the team completed by this player and its nearest rated opponents, if any
+    protected static List<List<Player>> addPlayerToRankedQueue(Player player) throws IOException {
+        // The player is told first, so this message can never arrive after the start of the game
+        player.send(Protocol.queued(true));
+        player.flush();
+        return rankedMatchmaking.addPlayer(player);
+    }
+
+    // Usernames and passwords must fit in every player store
+    protected static boolean isValidCredential(String username, String password) {
+        return isValidCredential(username) && isValidCredential(password);
     }
 
-    private static boolean playerRegistration(String username, String password, Player player) throws IOException {
-        for (Player registeredPlayer : registeredPlayers) {
-            if (registeredPlayer.getUsername().equals(username)) {
+    // Commas separate the fields and line breaks the records of "players.csv" and the journal
+    private static boolean isValidCredential(String credential) {
+        if( credential.isEmpty() || credential.length() > MAX_CREDENTIAL_LENGTH ) {
+            return false;
+        }
+        for( int i = 0; i < credential.length(); i++ ) {
+            char c = credential.charAt(i);
+            if( c == ',' || Character.isISOControl(c) ) {
                 return false;
             }
         }
+        return true;
+    }
+
+    protected static boolean playerRegistration(String username, String password, Player player) {
+        // The registry keeps its own copy, rank changes are copied to it when a ranked game ends. Only the hash of the
+        // password is kept, hashed before the username is claimed, so a taken username costs as much as a new one.
+        Player registeredPlayer = new Player(username, PasswordHasher.hash(password), EloRating.INITIAL_RATING);
+        if( registeredPlayers.putIfAbsent(username, registeredPlayer) != null ) {
+            return false;
+        }
+        savePlayerRegistration(registeredPlayer);
+        leaderboard.add(username, registeredPlayer.getRankPoints());
         player.setUsername(username);
-        player.setPassword(password);
-        player.setRankPoints(0);
-        registeredPlayers.add(player);
-        savePlayers(registeredPlayers);
-        loggedInPlayers.add(player);
-
-        System.out.println(player.getUsername() + " was registered successfully. His token is: " + player.getToken() + ".");
-        player.getSocketOutputStream().writeUTF("OK - Registration successful.");
+        player.setPassword(registeredPlayer.getPassword());
+        player.setRankPoints(EloRating.INITIAL_RATING);
+        loggedInPlayers.put(username, player);
+        sessionTokens.issue(player);
+
+        Log.info(player.getUsername() + " was registered successfully. His token is: " + player.getToken() + ".");
         return true;
     }
 
     protected static void playerLogout(Player player) {
-        try {
-            lock.lock();
-            loggedInPlayers.remove(player);
-            System.out.println( player.getUsername() + " disconnected from the server." );
+        loggedInPlayers.remove(player.getUsername(), player);
+        sessionTokens.revoke(player);
+        Log.info(player.getUsername() + " disconnected from the server.");
 
-            // Print useful server information
-            GameServer.printServerStatus();
-        } finally {
-            lock.unlock();
+        // Print useful server information
+        GameServer.printServerStatus();
+    }
+
+    // Slow on purpose (password hashing), it runs on the authentication threads
+    protected static boolean playerLogin(String username, String password, Player player) {
+        Player registeredPlayer = registeredPlayers.get(username);
+        if( registeredPlayer == null ) {
+            PasswordHasher.verifyUnknownPlayer(password);
+            return false;
+        }
+        String credential = registeredPlayer.getPassword();
+        if( !PasswordHasher.verify(password, credential) ) {
+            return false;
+        }
+        // Fails if the user is already logged in
+        if( loggedInPlayers.putIfAbsent(username, player) != null ) {
+            return false;
+        }
+        if( PasswordHasher.needsRehash(credential) ) {
+            // An outdated hash, replaced now that the password is known
+            registeredPlayer.setPassword(PasswordHasher.hash(password));
+            savePlayerCredential(registeredPlayer);
         }
+
+        player.setUsername(registeredPlayer.getUsername());
+        player.setPassword(registeredPlayer.getPassword());
+        player.setRankPoints(registeredPlayer.getRankPoints());
+        sessionTokens.issue(player);
+
+        Log.info(registeredPlayer.getUsername() + " logged in. His token is: " + player.getToken() + ".");
+        return true;
     }
 
-    private static boolean playerLogin(String username, String password, Player player) throws IOException {
-        for( Player registeredPlayer : registeredPlayers ) {
-            if( registeredPlayer.getUsername().equals(username) && registeredPlayer.getPassword().equals(password) ) {
-                for( Player loggedInPlayer: loggedInPlayers ) {
-                    if(Objects.equals(registeredPlayer.getUsername(), loggedInPlayer.getUsername())) {
-                        return false;
-                    }
-                }
+    // Returns null if no logged in player holds the token, or its session expired
+    protected static Player findSession(String token) {
+        return sessionTokens.find(token);
+    }
+
+    // Removes the tokens of the sessions that went silent, returns how many
+    protected static int expireSessionTokens(long now) {
+        return sessionTokens.expire(now);
+    }
 
-                player.setUsername(registeredPlayer.getUsername());
-                player.setPassword(registeredPlayer.getPassword());
-                player.setRankPoints(registeredPlayer.getRankPoints());
-                loggedInPlayers.add(player);
+    protected static boolean isLoggedIn(Player player) {
+        return player.getUsername() != null && loggedInPlayers.get(player.getUsername()) == player;
+    }
 
-                System.out.println(registeredPlayer.getUsername() + " logged in. His token is: " + player.getToken() + ".");
-                player.getSocketOutputStream().writeUTF("OK - Login successful. Welcome back " + player.getUsername() + ".");
-                return true;
-            }
+    protected static void savePlayerRegistration(Player player) {
+        try {
+            playerStore.saveRegistration(player);
+        } catch (IOException e) {
+            Log.error("Failed to save the registration of player " + player.getUsername() + ".", e);
         }
-        return false;
     }
 
-    protected static void savePlayers(List<Player> players) {
+    protected static void savePlayerCredential(Player player) {
         try {
-            lock.lock();
-            try (PrintWriter writer = new PrintWriter(new FileWriter(REGISTRATION_FILE))) {
-                for (Player player : players) {
-                    writer.println(player.getUsername() + "," + player.getPassword() + "," + player.getRankPoints());
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        } finally {
-            lock.unlock();
+            playerStore.saveCredential(player);
+        } catch(IOException e) {
+            Log.error("Failed to save the credential of player " + player.getUsername() + ".");
         }
     }
 
+    // Rank changes of all games are committed in batches, the future completes once they are durable
+    protected static CompletableFuture<Void> savePlayerRankChanges(List<RankChange> rankChanges) {
+        return groupCommitRunnable.submit(rankChanges);
+    }
+
     private static void loadRegisteredPlayers() {
-        try (BufferedReader reader = new BufferedReader(new FileReader(REGISTRATION_FILE))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] userData = line.split(",");
-                String username = userData[0];
-                String password = userData[1];
-                int playerRank = Integer.parseInt(userData[2]);
-                registeredPlayers.add(new Player(username, password, playerRank));
-            }
+        try {
+            playerStore.load(registeredPlayers);
         } catch (IOException e) {
-            e.printStackTrace();
+            Log.error("Failed to load the registered players.", e);
+        }
+        for( Player player: registeredPlayers.values() ) {
+            leaderboard.add(player.getUsername(), player.getRankPoints());
         }
     }
 
-    protected static void decrementNumberOfActiveGames() {
-        try {
-            lock.lock();
-            numberOfActiveGames--;
-        } finally {
-            lock.unlock();
-        }
+    protected static void updateLeaderboard(String username, int previousRankPoints, int rankPoints) {
+        leaderboard.update(username, previousRankPoints, rankPoints);
     }
 
-    protected static List<Player> getRegisteredPlayers() {
-        try {
-            lock.lock();
-            return registeredPlayers;
-        } finally {
-            lock.unlock();
+    // Answers a leaderboard or position query sent from a menu, returns null if the frame is not one
+    protected static byte[] answerLeaderboardQuery(Player player, Frame frame) throws IOException {
+        if( frame.getOpcode() == Protocol.LEADERBOARD_QUERY ) {
+            int numberOfPlayers = Math.min(Math.max(frame.readByte(), 0), MAX_LEADERBOARD_SIZE);
+            return Protocol.leaderboard(leaderboard.getTopPlayers(numberOfPlayers));
+        } else if( frame.getOpcode() == Protocol.POSITION_QUERY ) {
+            return Protocol.position(leaderboard.getPosition(player.getRankPoints()), leaderboard.getNumberOfPlayers(), player.getRankPoints());
         }
+        return null;
     }
 
-    protected static List<Player> getLoggedInPlayers() {
-        try {
-            lock.lock();
-            return loggedInPlayers;
-        } finally {
-            lock.unlock();
-        }
+    protected static void decrementNumberOfActiveGames() {
+        numberOfActiveGames.decrementAndGet();
+    }
+
+    protected static int nextGameIndex() {
+        return numberOfCreatedGames.incrementAndGet();
+    }
+
+    protected static Collection<Player> getRegisteredPlayers() {
+        return registeredPlayers.values();
+    }
+
+    protected static Player getRegisteredPlayer(String username) {
+        return registeredPlayers.get(username);
+    }
+
+    protected static Collection<Player> getLoggedInPlayers() {
+        return loggedInPlayers.values();
     }
 
     protected static int getNumberOfActiveGames() {
+        return numberOfActiveGames.get();
+    }
+
+    protected static int getSimpleGameQueueSize() {
         try {
-            lock.lock();
-            return numberOfActiveGames;
+            simpleGameQueueLock.lock();
+            return simpleGameQueue.size();
         } finally {
-            lock.unlock();
+            simpleGameQueueLock.unlock();
         }
     }
 
+    protected static int getRankedGameQueueSize() {
+        return rankedMatchmaking.getNumberOfQueuedPlayers();
+    }
+
+    protected static int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    protected static boolean isEventEngine() {
+        return eventLoops != null;
+    }
+
+    protected static TimerWheelRunnable getTimerWheel() {
+        return timerWheel;
+    }
+
+    protected static boolean isSimultaneousRounds() {
+        return isSimultaneousRounds;
+    }
+
+    // Event loops are handed out in turns
+    protected static GameEventLoop nextEventLoop() {
+        return eventLoops[Math.floorMod(numberOfAssignedEventLoops.getAndIncrement(), eventLoops.length)];
+    }
+
     protected static ExecutorService getGameThreadPool() {
-        try {
-            lock.lock();
-            return gameThreadPool;
-        } finally {
-            lock.unlock();
-        }
+        return gameThreadPool;
+    }
+
+    protected static ThreadPoolExecutor getAuthenticationExecutor() {
+        return authenticationExecutor;
+    }
+
+    protected static ExecutorService getSessionThreadPool() {
+        return sessionThreadPool;
+    }
+
+    protected static ExecutorService getResumeExecutor() {
+        return resumeExecutor;
     }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class GroupCommitRunnable implements Runnable {
+    private static final long COMMIT_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int MAX_BATCH_SIZE = 512;
+
+    private final PlayerStore playerStore;
+    private final BlockingQueue<PendingCommit> pendingCommits = new LinkedBlockingQueue<>();
+
+    public GroupCommitRunnable(PlayerStore playerStore) {
+        this.playerStore = playerStore;
+    }
+
+    // Queues the rank changes of one game, the future completes once they are durable
+    public CompletableFuture<Void> submit(List<RankChange> rankChanges) {
+        PendingCommit pendingCommit = new PendingCommit(rankChanges);
+        this.pendingCommits.add(pendingCommit);
+        return pendingCommit.future;
+    }
+
+    @Override
+    public void run() {
+        Log.info(Thread.currentThread().getName() + " started.");
+        List<PendingCommit> batch = new ArrayList<>();
+        List<RankChange> rankChanges = new ArrayList<>();
+        //noinspection InfiniteLoopStatement
+        while(true) {
+            try {
+                // Waits for the first game, then gathers every game that ends within the window or until the batch is full
+                PendingCommit pendingCommit = this.pendingCommits.take();
+                long deadline = System.nanoTime() + COMMIT_WINDOW_NANOS;
+                while( pendingCommit != null ) {
+                    batch.add(pendingCommit);
+                    rankChanges.addAll(pendingCommit.rankChanges);
+                    if( rankChanges.size() >= MAX_BATCH_SIZE ) {
+                        break;
+                    }
+                    pendingCommit = this.pendingCommits.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            try {
+                this.playerStore.saveRankChanges(rankChanges);
+                for( PendingCommit committed: batch ) {
+                    committed.future.complete(null);
+                }
+            } catch(IOException e) {
+                Log.error("Failed to save " + rankChanges.size() + " rank change/s.");
+                for( PendingCommit failed: batch ) {
+                    failed.future.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            rankChanges.clear();
+        }
+    }
+
+    private static class PendingCommit {
+        private final List<RankChange> rankChanges;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingCommit(List<RankChange> rankChanges) {
+            this.rankChanges = rankChanges;
+        }
+    }
+}
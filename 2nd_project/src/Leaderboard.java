@@ -0,0 +1,173 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Live leaderboard of the registered players, kept up to date as ranked games settle instead of sorting the registry on
+// every query. A Fenwick tree counts the players at every number of rank points, so a player's position (1 + the
+// players with more points, ties share it) costs O(log points). The top players are the first entries of a sorted set,
+// O(log n + k) for the top k.
+public class Leaderboard {
+    private static final int INITIAL_CAPACITY = 4096;
+
+    private final TreeSet<Entry> entries = new TreeSet<>();
+    // Players per number of rank points, and the Fenwick tree over them (index points + 1)
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int[] tree = new int[INITIAL_CAPACITY + 1];
+    private int numberOfPlayers = 0;
+    // Queries are a few microseconds, updates come once per player per ranked game
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public void add(String username, int rankPoints) {
+        try {
+            this.lock.lock();
+            this.insert(username, rankPoints);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // The player had previousRankPoints until now
+    public void update(String username, int previousRankPoints, int rankPoints) {
+        try {
+            this.lock.lock();
+            if( this.entries.remove(new Entry(username, previousRankPoints)) ) {
+                this.addToTree(previousRankPoints, -1);
+                this.numberOfPlayers--;
+            }
+            this.insert(username, rankPoints);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // 1 + the number of players with more rank points
+    public int getPosition(int rankPoints) {
+        try {
+            this.lock.lock();
+            return 1 + this.numberOfPlayers - this.countAtMost(rankPoints);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Up to count players, highest rank points first
+    public List<Standing> getTopPlayers(int count) {
+        List<Standing> topPlayers = new ArrayList<>(count);
+        try {
+            this.lock.lock();
+            Iterator<Entry> iterator = this.entries.iterator();
+            int position = 1;
+            while( topPlayers.size() < count && iterator.hasNext() ) {
+                Entry entry = iterator.next();
+                if( !topPlayers.isEmpty() && entry.rankPoints != topPlayers.get(topPlayers.size() - 1).rankPoints ) {
+                    position = topPlayers.size() + 1;
+                }
+                topPlayers.add(new Standing(position, entry.username, entry.rankPoints));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        return topPlayers;
+    }
+
+    public int getNumberOfPlayers() {
+        try {
+            this.lock.lock();
+            return this.numberOfPlayers;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Must be called with the lock held
+    private void insert(String username, int rankPoints) {
+        if( this.entries.add(new Entry(username, rankPoints)) ) {
+            this.addToTree(rankPoints, 1);
+            this.numberOfPlayers++;
+        }
+    }
+
+    private void addToTree(int rankPoints, int delta) {
+        // Rank points never go below 0
+        int points = Math.max(0, rankPoints);
+        if( points >= this.counts.length ) {
+            this.grow(points);
+        }
+        this.counts[points] += delta;
+        for( int i = points + 1; i < this.tree.length; i += i & -i ) {
+            this.tree[i] += delta;
+        }
+    }
+
+    // Players with at most these rank points
+    private int countAtMost(int rankPoints) {
+        int points = Math.min(Math.max(0, rankPoints), this.counts.length - 1);
+        int count = 0;
+        for( int i = points + 1; i > 0; i -= i & -i ) {
+            count += this.tree[i];
+        }
+        return count;
+    }
+
+    // Doubles the capacity past the given rank points and rebuilds the tree from the counts, O(capacity)
+    private void grow(int points) {
+        int capacity = this.counts.length;
+        while( capacity <= points ) {
+            capacity *= 2;
+        }
+        this.counts = Arrays.copyOf(this.counts, capacity);
+        this.tree = new int[capacity + 1];
+        for( int i = 1; i <= capacity; i++ ) {
+            this.tree[i] += this.counts[i - 1];
+            int parent = i + (i & -i);
+            if( parent <= capacity ) {
+                this.tree[parent] += this.tree[i];
+            }
+        }
+    }
+
+    // Highest rank points first, then by username
+    private static class Entry implements Comparable<Entry> {
+        private final String username;
+        private final int rankPoints;
+
+        private Entry(String username, int rankPoints) {
+            this.username = username;
+            this.rankPoints = rankPoints;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if( this.rankPoints != other.rankPoints ) {
+                return Integer.compare(other.rankPoints, this.rankPoints);
+            }
+            return this.username.compareTo(other.username);
+        }
+    }
+
+    public static class Standing {
+        private final int position;
+        private final String username;
+        private final int rankPoints;
+
+        public Standing(int position, String username, int rankPoints) {
+            this.position = position;
+            this.username = username;
+            this.rankPoints = rankPoints;
+        }
+
+        // Getters
+        public int getPosition() {
+            return this.position;
+        }
+        public String getUsername() {
+            return this.username;
+        }
+        public int getRankPoints() {
+            return this.rankPoints;
+        }
+    }
+}
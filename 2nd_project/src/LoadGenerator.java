@@ -0,0 +1,274 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+// Load test of a running GameServer: thousands of bots (BotClient) play on virtual threads, one per bot, and the games
+// they complete per second and the latencies they see are reported every few seconds and at the end
+public class LoadGenerator {
+    private static final int PING_INTERVAL = 5000;
+    private static final int REPORT_INTERVAL = 5000;
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+    // Server metrics added to every report with "--metrics-port". Until a game ends, active_games (games formed) minus
+    // games_total (games started) are the games waiting for a thread.
+    private static final String[] SERVER_METRICS = { "active_games", "games_total", "threads" };
+
+    private final String hostname;
+    private final int port;
+    private final int minThinkMillis;
+    private final int maxThinkMillis;
+    private final double playAgainShare;
+    private final double rankedShare;
+    private final int metricsPort;
+    private volatile boolean isStopRequested = false;
+
+    private final Set<BotClient> connectedBots = ConcurrentHashMap.newKeySet();
+    private final Metrics.Histogram loginLatency = new Metrics.Histogram("login", "Connecting and authenticating.");
+    private final Metrics.Histogram queueWait = new Metrics.Histogram("queue_wait", "Choosing a game type until the game starts.");
+    private final Metrics.Histogram gameDuration = new Metrics.Histogram("game", "Game start until game end.");
+    private final Metrics.Histogram guessLatency = new Metrics.Histogram("guess", "Sending a guess until its acknowledgement.");
+    private final LongAdder gamesCompleted = new LongAdder();
+    private final LongAdder rejectedGuesses = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile String lastFailure = null;
+
+    public LoadGenerator(String hostname, int port, int minThinkMillis, int maxThinkMillis, double playAgainShare, double rankedShare,
+                         int metricsPort) {
+        this.hostname = hostname;
+        this.port = port;
+        this.minThinkMillis = minThinkMillis;
+        this.maxThinkMillis = maxThinkMillis;
+        this.playAgainShare = playAgainShare;
+        this.rankedShare = rankedShare;
+        this.metricsPort = metricsPort;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int numberOfBots = Integer.parseInt(getOption(args, "--bots", "100"));
+        String hostname = getOption(args, "--host", "localhost");
+        int port = Integer.parseInt(getOption(args, "--port", "5000"));
+        // Bots are named prefix0, prefix1... and registered the first time they connect
+        String namePrefix = getOption(args, "--name", "bot");
+        // Strategies given to the bots in turn, e.g. "random,middle"
+        List<BotClient.Strategy> strategies = parseStrategies(getOption(args, "--strategy", "random"));
+        // Pause before every choice and guess, uniform between the bounds, e.g. "200-1000" (ms)
+        String[] thinkTime = getOption(args, "--think", "100-500").split("-");
+        int minThinkMillis = Integer.parseInt(thinkTime[0]);
+        int maxThinkMillis = Integer.parseInt(thinkTime[thinkTime.length - 1]);
+        // Share of games after which a bot plays again rather than disconnecting (and logging in again later)
+        double playAgainShare = Double.parseDouble(getOption(args, "--play-again", "0.9"));
+        // Share of games played ranked
+        double rankedShare = Double.parseDouble(getOption(args, "--ranked", "0.5"));
+        int durationSeconds = Integer.parseInt(getOption(args, "--duration", "60"));
+        // The bots connect spread over this time, instead of all at once
+        int rampUpSeconds = Integer.parseInt(getOption(args, "--ramp-up", "10"));
+        // The server's metrics port, read at every report (0: not read). The server only serves it on its loopback interface.
+        int metricsPort = Integer.parseInt(getOption(args, "--metrics-port", "0"));
+
+        LoadGenerator loadGenerator = new LoadGenerator(hostname, port, minThinkMillis, maxThinkMillis, playAgainShare, rankedShare,
+                metricsPort);
+        List<BotClient> bots = new ArrayList<>();
+        for( int i = 0; i < numberOfBots; i++ ) {
+            bots.add(new BotClient(loadGenerator, namePrefix + i, strategies.get(i % strategies.size())));
+        }
+        System.out.println("Load generator: " + numberOfBots + " bot/s " + strategies + " against " + hostname + ":" + port
+                + ", thinking " + minThinkMillis + "-" + maxThinkMillis + " ms, playing again " + playAgainShare
+                + ", ranked " + rankedShare + ", for " + durationSeconds + " s.");
+        loadGenerator.run(bots, durationSeconds, rampUpSeconds);
+        System.exit(0);
+    }
+
+    public void run(List<BotClient> bots, int durationSeconds, int rampUpSeconds) throws InterruptedException {
+        ExecutorService botThreadPool = createBotThreadPool();
+        // One timer thread keeps every connected bot alive while it thinks or waits in a queue
+        Thread heartbeatThread = new Thread(() -> {
+            try {
+                while( !this.isStopRequested ) {
+                    Thread.sleep(PING_INTERVAL);
+                    for( BotClient bot: this.connectedBots ) {
+                        bot.ping();
+                    }
+                }
+            } catch(InterruptedException ignored) {
+            }
+        }, "Heartbeat Thread");
+        heartbeatThread.setDaemon(true);
+        heartbeatThread.start();
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long rampUpNanos = TimeUnit.SECONDS.toNanos(rampUpSeconds);
+        int startedBots = 0;
+        long nextReport = start + TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL);
+        long lastGamesCompleted = 0;
+        long lastReport = start;
+        while( System.nanoTime() < end ) {
+            long now = System.nanoTime();
+            // Bots due by now, spread evenly over the ramp up
+            int dueBots = rampUpNanos == 0 ? bots.size() : (int) Math.min(bots.size(), bots.size() * (now - start) / rampUpNanos);
+            while( startedBots < dueBots ) {
+                botThreadPool.execute(bots.get(startedBots));
+                startedBots++;
+            }
+            if( now >= nextReport ) {
+                long gamesCompleted = this.gamesCompleted.sum();
+                double gamesPerSecond = (gamesCompleted - lastGamesCompleted) / ((now - lastReport) / 1e9);
+                System.out.printf("%4d s: %d bot/s connected, %.1f games/s, %d failure/s%s%s%n", TimeUnit.NANOSECONDS.toSeconds(now - start),
+                        this.connectedBots.size(), gamesPerSecond, this.failures.sum(),
+                        this.lastFailure == null ? "" : " (last: " + this.lastFailure + ")", this.readServerMetrics());
+                lastGamesCompleted = gamesCompleted;
+                lastReport = now;
+                nextReport += TimeUnit.MILLISECONDS.toNanos(REPORT_INTERVAL);
+            }
+            Thread.sleep(Math.max(1, Math.min(100, TimeUnit.NANOSECONDS.toMillis(end - now))));
+        }
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Bots blocked in a read are woken up by their socket closing
+        this.isStopRequested = true;
+        for( BotClient bot: bots ) {
+            bot.disconnect();
+        }
+        botThreadPool.shutdownNow();
+        this.printReport(elapsedSeconds);
+    }
+
+    // The SERVER_METRICS values, as read from the server's metrics endpoint
+    private String readServerMetrics() {
+        if( this.metricsPort == 0 ) {
+            return "";
+        }
+        StringBuilder values = new StringBuilder();
+        try( BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new URL("http", this.hostname, this.metricsPort, "/metrics").openStream(), StandardCharsets.UTF_8)) ) {
+            String line;
+            while( (line = reader.readLine()) != null ) {
+                for( String name: SERVER_METRICS ) {
+                    if( line.startsWith("game_server_" + name + " ") ) {
+                        values.append(", ").append(name).append(' ').append(line.substring(line.indexOf(' ') + 1));
+                    }
+                }
+            }
+        } catch(IOException e) {
+            return ", server metrics unavailable (" + e.getMessage() + ")";
+        }
+        return values.toString();
+    }
+
+    private void printReport(double elapsedSeconds) {
+        long gamesCompleted = this.gamesCompleted.sum();
+        System.out.printf("%nGames completed: %d in %.0f s (%.1f games/s), %d rejected guess/es, %d failure/s.%n",
+                gamesCompleted, elapsedSeconds, gamesCompleted / elapsedSeconds, this.rejectedGuesses.sum(), this.failures.sum());
+        // Percentiles are bucket upper bounds, at most 25% above the real ones, the mean is exact
+        System.out.printf("%-12s %10s %12s %12s %12s %12s%n", "Latency", "Count", "Mean", "p50", "p90", "p99");
+        printLatency("Login", this.loginLatency);
+        printLatency("Queue wait", this.queueWait);
+        printLatency("Game", this.gameDuration);
+        printLatency("Guess", this.guessLatency);
+    }
+
+    private static void printLatency(String name, Metrics.Histogram histogram) {
+        long count = histogram.getCount();
+        StringBuilder line = new StringBuilder(String.format("%-12s %10d %9.1f ms", name, count,
+                count == 0 ? 0.0 : histogram.getSumNanos() / (double) count / 1e6));
+        for( double quantile: QUANTILES ) {
+            line.append(String.format(" %9.1f ms", histogram.getQuantile(quantile) / 1e6));
+        }
+        System.out.println(line);
+    }
+
+    private static ExecutorService createBotThreadPool() {
+        try {
+            // One virtual thread per bot, looked up at runtime since virtual threads need Java 21
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch(ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not supported by this Java runtime, using one platform thread per bot.");
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private static List<BotClient.Strategy> parseStrategies(String option) {
+        List<BotClient.Strategy> strategies = new ArrayList<>();
+        for( String name: option.split(",") ) {
+            try {
+                strategies.add(BotClient.Strategy.valueOf(name.trim().toUpperCase()));
+            } catch(IllegalArgumentException e) {
+                System.err.println("Unknown strategy " + name + ", using random.");
+                strategies.add(BotClient.Strategy.RANDOM);
+            }
+        }
+        return strategies;
+    }
+
+    private static String getOption(String[] args, String name, String defaultValue) {
+        for( String arg: args ) {
+            if( arg.startsWith(name + "=") ) {
+                return arg.substring(name.length() + 1);
+            }
+        }
+        return defaultValue;
+    }
+
+    public void reportFailure(String failure) {
+        this.failures.increment();
+        this.lastFailure = failure;
+    }
+
+    public void addConnectedBot(BotClient bot) {
+        this.connectedBots.add(bot);
+    }
+
+    public void removeConnectedBot(BotClient bot) {
+        this.connectedBots.remove(bot);
+    }
+
+    // Getters
+    public String getHostname() {
+        return this.hostname;
+    }
+    public int getPort() {
+        return this.port;
+    }
+    public int getMinThinkMillis() {
+        return this.minThinkMillis;
+    }
+    public int getMaxThinkMillis() {
+        return this.maxThinkMillis;
+    }
+    public double getPlayAgainShare() {
+        return this.playAgainShare;
+    }
+    public double getRankedShare() {
+        return this.rankedShare;
+    }
+    public boolean getIsStopRequested() {
+        return this.isStopRequested;
+    }
+    public Metrics.Histogram getLoginLatency() {
+        return this.loginLatency;
+    }
+    public Metrics.Histogram getQueueWait() {
+        return this.queueWait;
+    }
+    public Metrics.Histogram getGameDuration() {
+        return this.gameDuration;
+    }
+    public Metrics.Histogram getGuessLatency() {
+        return this.guessLatency;
+    }
+    public LongAdder getGamesCompleted() {
+        return this.gamesCompleted;
+    }
+    public LongAdder getRejectedGuesses() {
+        return this.rejectedGuesses;
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+// Asynchronous server log: callers put their message in a bounded ring buffer and return, one writer thread prints
+// them. A game or event loop thread never waits for the console. When the buffer is full, the message is dropped (and
+// counted) or, with the block policy, the caller waits for a free slot.
+public class Log {
+    public enum Level { TRACE, DEBUG, INFO, WARN, ERROR }
+    public enum OverflowPolicy { DROP, BLOCK }
+
+    // Must be a power of two
+    private static final int BUFFER_SIZE = 8192;
+    private static final int MASK = BUFFER_SIZE - 1;
+    private static final long IDLE_PARK_NANOS = 10_000_000;
+
+    private static volatile Level level = Level.INFO;
+    private static volatile OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
+
+    // Multi-producer, single-consumer ring buffer. Slot i is free for the producer of position p when its sequence is
+    // p, and holds the message of position p once its sequence is p + 1. The slot's fields are written before its
+    // sequence and read after it.
+    private static final AtomicLongArray sequences = new AtomicLongArray(BUFFER_SIZE);
+    private static final Level[] levels = new Level[BUFFER_SIZE];
+    private static final long[] timestamps = new long[BUFFER_SIZE];
+    private static final String[] threadNames = new String[BUFFER_SIZE];
+    private static final String[] messages = new String[BUFFER_SIZE];
+    private static final AtomicLong tail = new AtomicLong(0);
+    // Only touched by the writer thread
+    private static long head = 0;
+    private static final AtomicLong numberOfDroppedMessages = new AtomicLong(0);
+    private static final Thread writerThread = new Thread(Log::writeMessages, "Log Writer Thread");
+    private static volatile boolean isWriterIdle = false;
+    // Lines drained but not printed yet, warnings and errors go to System.err
+    private static final int MAX_BATCH_CHARS = 64 * 1024;
+    private static final StringBuilder outputBatch = new StringBuilder();
+    private static final StringBuilder errorBatch = new StringBuilder();
+
+    static {
+        for( int i = 0; i < BUFFER_SIZE; i++ ) {
+            sequences.set(i, i);
+        }
+        writerThread.setDaemon(true);
+        writerThread.start();
+        // Whatever is still buffered when the server stops is printed
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::drain, "Log Shutdown Thread"));
+    }
+
+    // A message that would not be printed should not be built either, hot paths check first
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    public static void trace(String message) {
+        log(Level.TRACE, message);
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void warn(String message) {
+        log(Level.WARN, message);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    // The stack trace is printed below the message. It is rendered on the calling thread, errors are rare.
+    public static void error(String message, Throwable throwable) {
+        if( !isEnabled(Level.ERROR) ) {
+            return;
+        }
+        StringWriter stackTrace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(stackTrace));
+        log(Level.ERROR, message + System.lineSeparator() + stackTrace.toString().stripTrailing());
+    }
+
+    public static void log(Level messageLevel, String message) {
+        if( !isEnabled(messageLevel) ) {
+            return;
+        }
+        long timestamp = System.currentTimeMillis();
+        String threadName = Thread.currentThread().getName();
+        while( true ) {
+            long position = tail.get();
+            int slot = (int) (position & MASK);
+            long sequence = sequences.get(slot);
+            if( sequence == position ) {
+                if( tail.compareAndSet(position, position + 1) ) {
+                    levels[slot] = messageLevel;
+                    timestamps[slot] = timestamp;
+                    threadNames[slot] = threadName;
+                    messages[slot] = message;
+                    sequences.set(slot, position + 1);
+                    if( isWriterIdle ) {
+                        LockSupport.unpark(writerThread);
+                    }
+                    return;
+                }
+            } else if( sequence < position ) {
+                // The buffer is full, the writer has not printed the message of this slot yet
+                if( overflowPolicy == OverflowPolicy.DROP ) {
+                    numberOfDroppedMessages.incrementAndGet();
+                    return;
+                }
+                // Gives the writer the processor rather than spinning against it
+                LockSupport.unpark(writerThread);
+                Thread.yield();
+            }
+            // Otherwise another producer took the position first, tries the next one
+        }
+    }
+
+    private static void writeMessages() {
+        //noinspection InfiniteLoopStatement
+        while(true) {
+            if( drain() ) {
+                continue;
+            }
+            // Producers only wake the writer up once it announced it is idle, the buffer is checked again after that
+            isWriterIdle = true;
+            if( sequences.get((int) (head & MASK)) != head + 1 ) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+            isWriterIdle = false;
+        }
+    }
+
+    // Prints every buffered message, returns false if there was none. Only the writer thread (and the shutdown hook, once
+    // the writer no longer matters) calls it.
+    private static synchronized boolean drain() {
+        boolean hasWritten = false;
+        while( true ) {
+            int slot = (int) (head & MASK);
+            if( sequences.get(slot) != head + 1 ) {
+                break;
+            }
+            Level messageLevel = levels[slot];
+            StringBuilder batch = messageLevel.compareTo(Level.WARN) >= 0 ? errorBatch : outputBatch;
+            batch.append(Instant.ofEpochMilli(timestamps[slot])).append(' ').append(messageLevel).append(" [")
+                    .append(threadNames[slot]).append("] ").append(messages[slot]).append(System.lineSeparator());
+            threadNames[slot] = null;
+            messages[slot] = null;
+            sequences.set(slot, head + BUFFER_SIZE);
+            head++;
+            hasWritten = true;
+            if( batch.length() >= MAX_BATCH_CHARS ) {
+                writeBatches();
+            }
+        }
+        long droppedMessages = numberOfDroppedMessages.getAndSet(0);
+        if( droppedMessages > 0 ) {
+            errorBatch.append(Instant.now()).append(' ').append(Level.WARN).append(" [").append(Thread.currentThread().getName())
+                    .append("] Log buffer full, dropped ").append(droppedMessages).append(" message/s.").append(System.lineSeparator());
+        }
+        writeBatches();
+        return hasWritten;
+    }
+
+    // One write per stream for everything drained so far. The streams are looked up every time, so a redirected
+    // System.out (benchmarks discard the game output) is honoured.
+    private static void writeBatches() {
+        if( outputBatch.length() > 0 ) {
+            System.out.print(outputBatch);
+            System.out.flush();
+            outputBatch.setLength(0);
+        }
+        if( errorBatch.length() > 0 ) {
+            System.err.print(errorBatch);
+            System.err.flush();
+            errorBatch.setLength(0);
+        }
+    }
+
+    // Setters
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+    public static void setOverflowPolicy(OverflowPolicy newOverflowPolicy) {
+        overflowPolicy = newOverflowPolicy;
+    }
+}
@@ -0,0 +1,343 @@
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class MappedPlayerStore implements PlayerStore {
+    // Data file: header (magic, record count, record capacity, rating scale) followed by one fixed size record per player
+    private static final int MAGIC = 0x43504431;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int RECORD_COUNT_OFFSET = 4;
+    private static final int RECORD_CAPACITY_OFFSET = 8;
+    // ELO_RATINGS once the rank points are Elo ratings, 0 in files created before (their rank points are rescaled)
+    private static final int RATING_SCALE_OFFSET = 12;
+    private static final int ELO_RATINGS = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int INITIAL_RECORD_CAPACITY = 1024;
+
+    // Record: username and credential as length prefixed UTF-8, then the rank points
+    public static final int MAX_USERNAME_BYTES = 96;
+    public static final int MAX_CREDENTIAL_BYTES = 150;
+    private static final int RECORD_SIZE = 256;
+    // A mapped buffer is indexed by int, so the whole data file must stay below 2 GB
+    private static final int MAX_RECORD_CAPACITY = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+    private static final int USERNAME_OFFSET = 0;
+    private static final int CREDENTIAL_OFFSET = USERNAME_OFFSET + 2 + MAX_USERNAME_BYTES;
+    private static final int RANK_POINTS_OFFSET = CREDENTIAL_OFFSET + 2 + MAX_CREDENTIAL_BYTES;
+
+    // Index file: header (slot capacity, number of indexed records) followed by open addressing slots holding record number + 1
+    private static final int INDEX_CAPACITY_OFFSET = 0;
+    private static final int INDEX_SIZE_OFFSET = 4;
+    private static final int INDEX_HEADER_SIZE = 8;
+    private static final int EMPTY_SLOT = 0;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final PlayerJournal legacyJournal;
+    private final ReentrantLock lock = new ReentrantLock();
+    private MappedByteBuffer data = null;
+    private MappedByteBuffer index = null;
+    private int recordCount = 0;
+    private int indexCapacity = 0;
+
+    // The legacy journal is only read once, to migrate its players when the data file does not exist yet
+    public MappedPlayerStore(String dataFile, String indexFile, PlayerJournal legacyJournal) {
+        this.dataFile = Paths.get(dataFile);
+        this.indexFile = Paths.get(indexFile);
+        this.legacyJournal = legacyJournal;
+    }
+
+    @Override
+    public void load(Map<String, Player> players) throws IOException {
+        try {
+            this.lock.lock();
+            if( !Files.exists(this.dataFile) ) {
+                this.create(players);
+                return;
+            }
+
+            this.data = map(this.dataFile, 0);
+            if( this.data.getInt(MAGIC_OFFSET) != MAGIC ) {
+                throw new IOException(this.dataFile + " is not a player data file.");
+            }
+            this.recordCount = this.data.getInt(RECORD_COUNT_OFFSET);
+            Map<Player, Integer> recordNumbers = new HashMap<>();
+            for( int i = 0; i < this.recordCount; i++ ) {
+                int offset = recordOffset(i);
+                String username = this.readString(offset + USERNAME_OFFSET);
+                String password = this.readString(offset + CREDENTIAL_OFFSET);
+                int rankPoints = this.data.getInt(offset + RANK_POINTS_OFFSET);
+                Player player = new Player(username, password, rankPoints);
+                players.put(username, player);
+                recordNumbers.put(player, i);
+            }
+            // Plain passwords migrated before hashing are overwritten in place
+            List<Player> hashedPlayers = PasswordHasher.hashPlainPasswords(recordNumbers.keySet());
+            for( Player player: hashedPlayers ) {
+                this.writeString(recordOffset(recordNumbers.get(player)) + CREDENTIAL_OFFSET, player.getPassword(), MAX_CREDENTIAL_BYTES);
+            }
+            if( this.data.getInt(RATING_SCALE_OFFSET) != ELO_RATINGS ) {
+                EloRating.seedLegacyRatings(recordNumbers.keySet());
+                for( Map.Entry<Player, Integer> entry: recordNumbers.entrySet() ) {
+                    this.data.putInt(recordOffset(entry.getValue()) + RANK_POINTS_OFFSET, entry.getKey().getRankPoints());
+                }
+                this.data.putInt(RATING_SCALE_OFFSET, ELO_RATINGS);
+                this.data.force();
+            } else if( !hashedPlayers.isEmpty() ) {
+                this.data.force();
+            }
+
+            this.index = Files.exists(this.indexFile) ? map(this.indexFile, 0) : null;
+            if( this.index == null || this.index.getInt(INDEX_SIZE_OFFSET) != this.recordCount ) {
+                // Missing, or a crash happened between a record write and its index update
+                this.rebuildIndex(indexCapacityFor(this.recordCount));
+            } else {
+                this.indexCapacity = this.index.getInt(INDEX_CAPACITY_OFFSET);
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Creates the data and index files, migrating the players of the legacy journal if there is one. The records are
+    // written to a temporary file that only replaces the data file once complete, so a migration that fails or crashes
+    // halfway is done again at the next start instead of leaving an empty data file behind.
+    private void create(Map<String, Player> players) throws IOException {
+        Map<String, Player> legacyPlayers = new HashMap<>();
+        if( this.legacyJournal != null ) {
+            // Only read, the legacy files are neither rewritten nor compacted
+            this.legacyJournal.read(legacyPlayers);
+        }
+        Iterator<Player> iterator = legacyPlayers.values().iterator();
+        while( iterator.hasNext() ) {
+            Player player = iterator.next();
+            if( !fitsRecord(player) ) {
+                // The legacy files are left untouched, the player is still in them
+                Log.error("Player " + player.getUsername() + " does not fit a record of " + this.dataFile + " and was not migrated.");
+                iterator.remove();
+            }
+        }
+
+        Path temporaryFile = this.dataFile.resolveSibling(this.dataFile.getFileName() + ".tmp");
+        // Left behind by a migration that did not finish
+        Files.deleteIfExists(temporaryFile);
+        if( legacyPlayers.size() > MAX_RECORD_CAPACITY ) {
+            throw new IOException(legacyPlayers.size() + " players do not fit in " + this.dataFile + ".");
+        }
+        int recordCapacity = Math.min(MAX_RECORD_CAPACITY, Math.max(INITIAL_RECORD_CAPACITY, Integer.highestOneBit(Math.max(1, legacyPlayers.size())) * 2));
+        this.data = map(temporaryFile, HEADER_SIZE + (long) recordCapacity * RECORD_SIZE);
+        this.data.putInt(RECORD_CAPACITY_OFFSET, recordCapacity);
+        this.data.putInt(RATING_SCALE_OFFSET, ELO_RATINGS);
+        this.recordCount = 0;
+        for( Player player: legacyPlayers.values() ) {
+            this.writeRecord(this.recordCount, player);
+            this.recordCount++;
+        }
+        this.data.putInt(RECORD_COUNT_OFFSET, this.recordCount);
+        this.data.putInt(MAGIC_OFFSET, MAGIC);
+        this.data.force();
+
+        // An index left from an earlier data file must not be taken for this one's
+        Files.deleteIfExists(this.indexFile);
+        Files.move(temporaryFile, this.dataFile, StandardCopyOption.ATOMIC_MOVE);
+        this.data = map(this.dataFile, 0);
+        this.rebuildIndex(indexCapacityFor(this.recordCount));
+
+        players.putAll(legacyPlayers);
+        if( !legacyPlayers.isEmpty() ) {
+            Log.info("Migrated " + legacyPlayers.size() + " player/s to " + this.dataFile + ".");
+        }
+    }
+
+    @Override
+    public void saveRegistration(Player player) throws IOException {
+        try {
+            this.lock.lock();
+            if( this.findRecord(player.getUsername()) >= 0 ) {
+                throw new IOException("Player " + player.getUsername() + " is already stored.");
+            }
+            if( this.recordCount == this.data.getInt(RECORD_CAPACITY_OFFSET) ) {
+                this.growData();
+            }
+
+            // Record first, then the count that makes it visible, then the index that points to it
+            int recordNumber = this.recordCount;
+            this.writeRecord(recordNumber, player);
+            this.data.force(recordOffset(recordNumber), RECORD_SIZE);
+            this.recordCount++;
+            this.data.putInt(RECORD_COUNT_OFFSET, this.recordCount);
+            this.data.force(0, HEADER_SIZE);
+
+            if( (this.recordCount * 2) > this.indexCapacity ) {
+                this.rebuildIndex(this.indexCapacity * 2);
+            } else {
+                this.insertIntoIndex(player.getUsername(), recordNumber);
+                this.index.putInt(INDEX_SIZE_OFFSET, this.recordCount);
+                this.index.force();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Overwrites the credential of the player's record in place
+    @Override
+    public void saveCredential(Player player) throws IOException {
+        try {
+            this.lock.lock();
+            int recordNumber = this.findRecord(player.getUsername());
+            if( recordNumber < 0 ) {
+                throw new IOException("Player " + player.getUsername() + " is not stored.");
+            }
+            this.writeString(recordOffset(recordNumber) + CREDENTIAL_OFFSET, player.getPassword(), MAX_CREDENTIAL_BYTES);
+            this.data.force(recordOffset(recordNumber), RECORD_SIZE);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Overwrites the rank points of each player's record in place, then forces the dirty pages once
+    @Override
+    public void saveRankChanges(List<RankChange> rankChanges) throws IOException {
+        try {
+            this.lock.lock();
+            for( RankChange rankChange: rankChanges ) {
+                Player player = rankChange.getPlayer();
+                int recordNumber = this.findRecord(player.getUsername());
+                if( recordNumber < 0 ) {
+                    throw new IOException("Player " + player.getUsername() + " is not stored.");
+                }
+                this.data.putInt(recordOffset(recordNumber) + RANK_POINTS_OFFSET, player.getRankPoints());
+            }
+            this.data.force();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Returns the record number of the username, or -1 if it is not stored
+    private int findRecord(String username) {
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        int mask = this.indexCapacity - 1;
+        for( int slot = hash(username) & mask; ; slot = (slot + 1) & mask ) {
+            int value = this.index.getInt(INDEX_HEADER_SIZE + slot * Integer.BYTES);
+            if( value == EMPTY_SLOT ) {
+                return -1;
+            }
+            if( this.usernameEquals(value - 1, usernameBytes) ) {
+                return value - 1;
+            }
+        }
+    }
+
+    private void insertIntoIndex(String username, int recordNumber) {
+        int mask = this.indexCapacity - 1;
+        int slot = hash(username) & mask;
+        while( this.index.getInt(INDEX_HEADER_SIZE + slot * Integer.BYTES) != EMPTY_SLOT ) {
+            slot = (slot + 1) & mask;
+        }
+        this.index.putInt(INDEX_HEADER_SIZE + slot * Integer.BYTES, recordNumber + 1);
+    }
+
+    private void rebuildIndex(int capacity) throws IOException {
+        this.indexCapacity = capacity;
+        this.index = map(this.indexFile, INDEX_HEADER_SIZE + (long) capacity * Integer.BYTES);
+        // Marks the index as incomplete until every record is back in it
+        this.index.putInt(INDEX_SIZE_OFFSET, -1);
+        this.index.putInt(INDEX_CAPACITY_OFFSET, capacity);
+        for( int slot = 0; slot < capacity; slot++ ) {
+            this.index.putInt(INDEX_HEADER_SIZE + slot * Integer.BYTES, EMPTY_SLOT);
+        }
+        for( int i = 0; i < this.recordCount; i++ ) {
+            this.insertIntoIndex(this.readString(recordOffset(i) + USERNAME_OFFSET), i);
+        }
+        this.index.force();
+        this.index.putInt(INDEX_SIZE_OFFSET, this.recordCount);
+        this.index.force();
+    }
+
+    private void growData() throws IOException {
+        int recordCapacity = this.data.getInt(RECORD_CAPACITY_OFFSET);
+        if( recordCapacity == MAX_RECORD_CAPACITY ) {
+            throw new IOException(this.dataFile + " is full.");
+        }
+        recordCapacity = (int) Math.min(MAX_RECORD_CAPACITY, (long) recordCapacity * 2);
+        this.data = map(this.dataFile, HEADER_SIZE + (long) recordCapacity * RECORD_SIZE);
+        this.data.putInt(RECORD_CAPACITY_OFFSET, recordCapacity);
+        this.data.force(0, HEADER_SIZE);
+    }
+
+    private void writeRecord(int recordNumber, Player player) throws IOException {
+        int offset = recordOffset(recordNumber);
+        this.writeString(offset + USERNAME_OFFSET, player.getUsername(), MAX_USERNAME_BYTES);
+        this.writeString(offset + CREDENTIAL_OFFSET, player.getPassword(), MAX_CREDENTIAL_BYTES);
+        this.data.putInt(offset + RANK_POINTS_OFFSET, player.getRankPoints());
+    }
+
+    private static boolean fitsRecord(Player player) {
+        return player.getUsername().getBytes(StandardCharsets.UTF_8).length <= MAX_USERNAME_BYTES
+                && player.getPassword().getBytes(StandardCharsets.UTF_8).length <= MAX_CREDENTIAL_BYTES;
+    }
+
+    private void writeString(int offset, String value, int maxBytes) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if( bytes.length > maxBytes ) {
+            throw new IOException("Value too long for a player record: " + value);
+        }
+        this.data.putShort(offset, (short) bytes.length);
+        this.data.put(offset + 2, bytes);
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[this.data.getShort(offset)];
+        this.data.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private boolean usernameEquals(int recordNumber, byte[] usernameBytes) {
+        int offset = recordOffset(recordNumber) + USERNAME_OFFSET;
+        if( this.data.getShort(offset) != usernameBytes.length ) {
+            return false;
+        }
+        for( int i = 0; i < usernameBytes.length; i++ ) {
+            if( this.data.get(offset + 2 + i) != usernameBytes[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Computed in long, so a record number past the end of the mapped buffer fails instead of wrapping around
+    private static int recordOffset(int recordNumber) {
+        return Math.toIntExact(HEADER_SIZE + (long) recordNumber * RECORD_SIZE);
+    }
+
+    private static int indexCapacityFor(int recordCount) {
+        return Math.max(INITIAL_RECORD_CAPACITY * 2, Integer.highestOneBit(Math.max(1, recordCount)) * 4);
+    }
+
+    private static int hash(String username) {
+        int hash = username.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    // Maps the whole file, growing it first when size is bigger than the file (0 keeps the current size)
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file.toFile(), "rw")) {
+            if( size > randomAccessFile.length() ) {
+                randomAccessFile.setLength(size);
+            }
+            return randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, randomAccessFile.length());
+        }
+    }
+}
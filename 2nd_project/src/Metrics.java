@@ -0,0 +1,251 @@
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+// In-process server metrics: counters, gauges and latency histograms, scraped from a local HTTP endpoint in the
+// Prometheus text format. Recording never locks and never allocates, a scrape reads the values without stopping anyone.
+public class Metrics {
+    private static final String PREFIX = "game_server_";
+    private static final List<Counter> counters = new ArrayList<>();
+    private static final List<Histogram> histograms = new ArrayList<>();
+    // Registered once the server knows what to read them from
+    private static final List<Gauge> gauges = new ArrayList<>();
+
+    public static final Histogram AUTHENTICATION = histogram("authentication_seconds", "Time from accepting a connection to authenticating its player.");
+    public static final Histogram SIMPLE_QUEUE_WAIT = histogram("simple_queue_wait_seconds", "Time a player waited in the simple game queue before being matched.");
+    public static final Histogram RANKED_QUEUE_WAIT = histogram("ranked_queue_wait_seconds", "Time a player waited in the ranked game queues before being matched.");
+    public static final Histogram GAME_DURATION = histogram("game_duration_seconds", "Time from creating a game to announcing its results.");
+    public static final Histogram ROUND_DURATION = histogram("round_duration_seconds", "Time from drawing a round to sending its results.");
+    public static final Counter GAMES = counter("games_total", "Games created.");
+    public static final Counter GUESSES = counter("guesses_total", "Valid guesses taken.");
+    public static final Counter FORFEITED_GUESSES = counter("forfeited_guesses_total", "Guesses missed (deadline or lost connection).");
+    public static final Counter BYTES_RECEIVED = counter("received_bytes_total", "Bytes read from player connections.");
+    public static final Counter BYTES_SENT = counter("sent_bytes_total", "Bytes written to player connections.");
+    public static final Counter REJECTED_AUTHENTICATIONS = counter("rejected_authentications_total", "Logins and registrations turned away with a full authentication queue.");
+
+    private static HttpServer endpoint = null;
+
+    private static Counter counter(String name, String help) {
+        Counter counter = new Counter(PREFIX + name, help);
+        counters.add(counter);
+        return counter;
+    }
+
+    private static Histogram histogram(String name, String help) {
+        Histogram histogram = new Histogram(PREFIX + name, help);
+        histograms.add(histogram);
+        return histogram;
+    }
+
+    // The supplier is called on every scrape, from the endpoint's thread
+    public static void gauge(String name, String help, LongSupplier supplier) {
+        synchronized( gauges ) {
+            gauges.add(new Gauge(PREFIX + name, help, supplier));
+        }
+    }
+
+    // Serves GET /metrics on the loopback interface only, the metrics are for whoever runs the server
+    public static void startEndpoint(int port) throws IOException {
+        endpoint = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        endpoint.createContext("/metrics", exchange -> {
+            byte[] body = render().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try( OutputStream responseBody = exchange.getResponseBody() ) {
+                responseBody.write(body);
+            }
+        });
+        endpoint.start();
+    }
+
+    public static String render() {
+        StringBuilder text = new StringBuilder();
+        for( Counter counter: counters ) {
+            text.append("# HELP ").append(counter.name).append(' ').append(counter.help).append('\n');
+            text.append("# TYPE ").append(counter.name).append(" counter\n");
+            text.append(counter.name).append(' ').append(counter.get()).append('\n');
+        }
+        synchronized( gauges ) {
+            for( Gauge gauge: gauges ) {
+                text.append("# HELP ").append(gauge.name).append(' ').append(gauge.help).append('\n');
+                text.append("# TYPE ").append(gauge.name).append(" gauge\n");
+                text.append(gauge.name).append(' ').append(gauge.supplier.getAsLong()).append('\n');
+            }
+        }
+        for( Histogram histogram: histograms ) {
+            histogram.render(text);
+        }
+        return text.toString();
+    }
+
+    public static class Counter {
+        private final String name;
+        private final String help;
+        // Striped, so the game and connection threads do not contend on one cache line
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public void increment() {
+            this.value.increment();
+        }
+
+        public void add(long amount) {
+            this.value.add(amount);
+        }
+
+        public long get() {
+            return this.value.sum();
+        }
+    }
+
+    private static class Gauge {
+        private final String name;
+        private final String help;
+        private final LongSupplier supplier;
+
+        private Gauge(String name, String help, LongSupplier supplier) {
+            this.name = name;
+            this.help = help;
+            this.supplier = supplier;
+        }
+    }
+
+    // Log-linear histogram of durations in nanoseconds: every power of two is split into 4 buckets, so a percentile read
+    // from it is at most 25% above the real one, from a nanosecond to centuries with 248 buckets
+    public static class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        private static final int NUMBER_OF_BUCKETS = 62 * SUB_BUCKETS;
+        private static final double[] QUANTILES = { 0.5, 0.9, 0.99 };
+
+        private final String name;
+        private final String help;
+        private final LongAdder[] buckets = new LongAdder[NUMBER_OF_BUCKETS];
+        private final LongAdder sumNanos = new LongAdder();
+
+        // Created through Metrics.histogram() to be served by the endpoint, directly to measure outside the server
+        public Histogram(String name, String help) {
+            this.name = name;
+            this.help = help;
+            for( int i = 0; i < NUMBER_OF_BUCKETS; i++ ) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        // Records the time since a System.nanoTime() reading
+        public void recordSince(long startNanos) {
+            this.record(System.nanoTime() - startNanos);
+        }
+
+        public void record(long nanos) {
+            long value = Math.max(0, nanos);
+            this.buckets[bucketOf(value)].increment();
+            this.sumNanos.add(value);
+        }
+
+        public long getCount() {
+            long count = 0;
+            for( LongAdder bucket: this.buckets ) {
+                count += bucket.sum();
+            }
+            return count;
+        }
+
+        // Exact, unlike the quantiles
+        public long getSumNanos() {
+            return this.sumNanos.sum();
+        }
+
+        // Upper bound of the bucket the quantile falls in, in nanoseconds
+        public long getQuantile(double quantile) {
+            long[] counts = new long[NUMBER_OF_BUCKETS];
+            long count = 0;
+            for( int i = 0; i < NUMBER_OF_BUCKETS; i++ ) {
+                counts[i] = this.buckets[i].sum();
+                count += counts[i];
+            }
+            return quantileOf(counts, count, quantile);
+        }
+
+        // Values below 4 have a bucket each, above that the power of two and the quarter of it the value falls in
+        private static int bucketOf(long value) {
+            if( value < SUB_BUCKETS ) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int quarter = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return Math.min(NUMBER_OF_BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + quarter);
+        }
+
+        // Largest value that falls in the bucket
+        private static long upperBoundOf(int bucket) {
+            if( bucket < SUB_BUCKETS ) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + 1;
+            int quarter = bucket % SUB_BUCKETS;
+            long width = 1L << (exponent - 2);
+            return (SUB_BUCKETS + quarter) * width + width - 1;
+        }
+
+        // Prometheus histogram (every cumulative bucket, in seconds) and the quantiles read from it. The bucket layout is
+        // the same at every scrape, even for buckets nothing fell in yet, so rates and quantiles over time line up.
+        private void render(StringBuilder text) {
+            long[] counts = new long[NUMBER_OF_BUCKETS];
+            long count = 0;
+            for( int i = 0; i < NUMBER_OF_BUCKETS; i++ ) {
+                counts[i] = this.buckets[i].sum();
+                count += counts[i];
+            }
+
+            text.append("# HELP ").append(this.name).append(' ').append(this.help).append('\n');
+            text.append("# TYPE ").append(this.name).append(" histogram\n");
+            long cumulativeCount = 0;
+            for( int i = 0; i < NUMBER_OF_BUCKETS; i++ ) {
+                cumulativeCount += counts[i];
+                text.append(this.name).append("_bucket{le=\"").append(toSeconds(upperBoundOf(i))).append("\"} ").append(cumulativeCount).append('\n');
+            }
+            text.append(this.name).append("_bucket{le=\"+Inf\"} ").append(count).append('\n');
+            text.append(this.name).append("_sum ").append(toSeconds(this.sumNanos.sum())).append('\n');
+            text.append(this.name).append("_count ").append(count).append('\n');
+
+            // Ready to read without a Prometheus server
+            String quantileName = this.name + "_quantile";
+            text.append("# TYPE ").append(quantileName).append(" gauge\n");
+            for( double quantile: QUANTILES ) {
+                text.append(quantileName).append("{quantile=\"").append(quantile).append("\"} ")
+                        .append(toSeconds(quantileOf(counts, count, quantile))).append('\n');
+            }
+        }
+
+        private static long quantileOf(long[] counts, long count, double quantile) {
+            if( count == 0 ) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long cumulativeCount = 0;
+            for( int i = 0; i < counts.length; i++ ) {
+                cumulativeCount += counts[i];
+                if( cumulativeCount >= rank ) {
+                    return upperBoundOf(i);
+                }
+            }
+            return upperBoundOf(counts.length - 1);
+        }
+
+        private static double toSeconds(long nanos) {
+            return nanos / 1e9;
+        }
+    }
+}
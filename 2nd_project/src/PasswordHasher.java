@@ -0,0 +1,108 @@
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// Salted, deliberately slow password hashes (PBKDF2 with HMAC-SHA256). A stored credential reads
+// "pbkdf2-sha256$iterations$salt$hash" (Base64), so it fits the player stores like the plain passwords did. Plain
+// passwords stored before hashing are hashed by the player stores when they load them, once.
+// A hash with outdated iterations is replaced at the player's next login, once the password is known.
+public class PasswordHasher {
+    public static final int DEFAULT_ITERATIONS = 100000;
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String SCHEME = "pbkdf2-sha256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private static final SecureRandom secureRandom = new SecureRandom();
+    private static volatile int iterations = DEFAULT_ITERATIONS;
+    // Verified instead when the username is unknown, so a failed login takes as long whether the player exists or not
+    private static volatile String unknownPlayerCredential = null;
+
+    public static String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        secureRandom.nextBytes(salt);
+        int hashIterations = iterations;
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return SCHEME + "$" + hashIterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(pbkdf2(password, salt, hashIterations));
+    }
+
+    public static boolean verify(String password, String credential) {
+        if( !isHashed(credential) ) {
+            // Stored before hashing, compared in constant time all the same
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), credential.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] fields = credential.split("\\$");
+        if( fields.length != 4 ) {
+            return false;
+        }
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expectedHash = decoder.decode(fields[3]);
+            byte[] hash = pbkdf2(password, decoder.decode(fields[2]), Integer.parseInt(fields[1]));
+            return MessageDigest.isEqual(hash, expectedHash);
+        } catch(IllegalArgumentException e) {
+            Log.error("Malformed stored credential.");
+            return false;
+        }
+    }
+
+    // Burns the time of a verification for a login with an unknown username
+    public static void verifyUnknownPlayer(String password) {
+        String credential = unknownPlayerCredential;
+        if( credential == null ) {
+            credential = hash("");
+            unknownPlayerCredential = credential;
+        }
+        verify(password, credential);
+    }
+
+    // Hashes with another number of iterations are replaced once the password is known
+    public static boolean needsRehash(String credential) {
+        return !isHashed(credential) || !credential.startsWith(SCHEME + "$" + iterations + "$");
+    }
+
+    // Hashes the passwords stored in plain text before hashing, returns the players whose credential changed (for the
+    // store to save them)
+    public static List<Player> hashPlainPasswords(Collection<Player> players) {
+        List<Player> hashedPlayers = new ArrayList<>();
+        for( Player player: players ) {
+            if( !isHashed(player.getPassword()) ) {
+                player.setPassword(hash(player.getPassword()));
+                hashedPlayers.add(player);
+            }
+        }
+        if( !hashedPlayers.isEmpty() ) {
+            Log.info("Hashed " + hashedPlayers.size() + " password/s stored in plain text.");
+        }
+        return hashedPlayers;
+    }
+
+    private static boolean isHashed(String credential) {
+        return credential.startsWith(SCHEME + "$");
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int hashIterations) {
+        PBEKeySpec keySpec = new PBEKeySpec(password.toCharArray(), salt, hashIterations, HASH_BITS);
+        try {
+            // Factories are not thread safe, authentication threads get one each call (cheap next to the hashing)
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(keySpec).getEncoded();
+        } catch(GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is not supported by this Java runtime.", e);
+        } finally {
+            keySpec.clearPassword();
+        }
+    }
+
+    // Setters
+    public static void setIterations(int newIterations) {
+        iterations = newIterations;
+        unknownPlayerCredential = null;
+    }
+}
@@ -1,28 +1,44 @@
 import java.io.DataInputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.net.Socket;
-import java.security.SecureRandom;
-import java.time.Instant;
-import java.util.Base64;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Player {
+    public static final int NUMBER_OF_RANK_TIERS = 5;
+    private static final int SEND_BUFFER_SIZE = 8192;
     private String username;
     private String password;
-    private Socket socket;
-    private String token = null;
+    // The socket and the connection are replaced when the client resumes its session on a new connection
+    private volatile Socket socket;
+    // Issued once the player authenticated, connections that fail to authenticate never get one
+    private volatile String token = null;
     private int rankPoints = 0;
     private int rankTier = 0;
-    private DataInputStream socketInputStream = null;
-    private DataOutputStream socketOutputStream = null;
+    private volatile DataInputStream socketInputStream = null;
+    private volatile DataOutputStream socketOutputStream = null;
+    // Blocking engine: a resumed session is moved to its new socket while its game may be sending
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private volatile PlayerConnection connection = null;
+    // The game the player is playing, null in queues and menus
+    private volatile Game game = null;
+    // Expiry of the player's wait in a matchmaking queue, and when it started
+    private volatile Timeout queueTimeout = null;
+    private volatile long queuedAt = 0;
+    // Last time anything (a heartbeat at least) arrived from the player's client
+    private volatile long lastSeenAt = System.nanoTime();
 
     public Player(String username, String password, Socket socket) throws IOException {
         this.username = username;
         this.password = password;
         this.socket = socket;
-        this.token = this.generateToken();
-        this.socketInputStream = new DataInputStream(this.socket.getInputStream());
-        this.socketOutputStream = new DataOutputStream(this.socket.getOutputStream());
+        this.socketInputStream = createInputStream(this.socket);
+        // Frames are buffered until the game flushes at the end of each step, so each step costs one write per player
+        this.socketOutputStream = createOutputStream(this.socket);
     }
     public Player(String username, String password, int rank) {   // FOR REGISTRATION ONLY
         this.username = username;
@@ -30,17 +46,166 @@ public class Player {
         this.rankPoints = rank;
     }
 
-    public String generateToken() {
-        SecureRandom secureRandom = new SecureRandom();
-        int TOKEN_LENGTH = 10;
-        byte[] tokenBytes = new byte[TOKEN_LENGTH];
-        secureRandom.nextBytes(tokenBytes);
+    // Buffers an encoded frame, the same array can be sent to every player of a game
+    public void send(byte[] frame) throws IOException {
+        PlayerConnection connection = this.connection;
+        if( connection != null ) {
+            connection.queueFrame(frame);
+            return;
+        }
+        try {
+            this.sendLock.lock();
+            this.socketOutputStream.write(frame);
+        } finally {
+            this.sendLock.unlock();
+        }
+    }
+
+    // Sends everything buffered since the last flush in one write
+    public void flush() throws IOException {
+        PlayerConnection connection = this.connection;
+        if( connection != null ) {
+            connection.requestFlush();
+            return;
+        }
+        try {
+            this.sendLock.lock();
+            this.socketOutputStream.flush();
+        } finally {
+            this.sendLock.unlock();
+        }
+    }
 
-        long timestamp = Instant.now().toEpochMilli();
+    // Blocking engine: moves the session to the socket its client reconnected on and closes the previous one, whatever
+    // read it (the game waiting for a guess, the end game menu) fails and reads the new one from then on. Must be called
+    // with the send lock held, so nothing is sent to either socket meanwhile.
+    public void replaceSocket(Socket socket) throws IOException {
+        Socket previousSocket = this.socket;
+        // A read of the new socket keeps the deadline of the read that was waiting on the previous one
+        socket.setSoTimeout(previousSocket.getSoTimeout());
+        this.socketInputStream = createInputStream(socket);
+        this.socketOutputStream = createOutputStream(socket);
+        this.socket = socket;
+        this.lastSeenAt = System.nanoTime();
+        try {
+            previousSocket.close();
+        } catch(IOException ignored) {
+        }
+    }
 
-        return Base64.getUrlEncoder().withoutPadding().encodeToString(tokenBytes) + "_" + timestamp;
+    // Blocking engine: the socket's bytes are counted under the buffers, once per read or write that reaches the socket
+    private static DataInputStream createInputStream(Socket socket) throws IOException {
+        return new DataInputStream(new BufferedInputStream(new FilterInputStream(socket.getInputStream()) {
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int numberOfBytes = super.read(b, off, len);
+                if( numberOfBytes > 0 ) {
+                    Metrics.BYTES_RECEIVED.add(numberOfBytes);
+                }
+                return numberOfBytes;
+            }
+        }));
     }
 
+    private static DataOutputStream createOutputStream(Socket socket) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FilterOutputStream(socket.getOutputStream()) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                this.out.write(b, off, len);
+                Metrics.BYTES_SENT.add(len);
+            }
+        }, SEND_BUFFER_SIZE));
+    }
+
+    // Blocking engine: reads the next frame, heartbeats are counted and skipped
+    public Frame readFrame() throws IOException {
+        while( true ) {
+            Frame frame = Protocol.readFrame(this.socketInputStream);
+            this.lastSeenAt = System.nanoTime();
+            if( frame.getOpcode() != Protocol.PING ) {
+                return frame;
+            }
+        }
+    }
+
+    public Frame readFrame(byte expectedOpcode) throws IOException {
+        return Protocol.expect(this.readFrame(), expectedOpcode);
+    }
+
+    // Blocking engine: reads the next message that is not a heartbeat, failing with a SocketTimeoutException once the
+    // deadline passed. The timeout is set again before every message, like in readGuess.
+    public Frame readFrameBefore(long deadline) throws IOException {
+        while( true ) {
+            this.socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+            Frame frame = Protocol.readFrame(this.socketInputStream);
+            this.lastSeenAt = System.nanoTime();
+            if( frame.getOpcode() != Protocol.PING ) {
+                return frame;
+            }
+        }
+    }
+
+    // Blocking engine: reads the guess for the round straight from the stream, without decoding a Frame for it. Heartbeats
+    // are counted and skipped, a guess left over from an earlier round is dropped. The socket timeout only bounds one read,
+    // so it is set again before every message: heartbeats every 5 seconds must not push the deadline back.
+    public int readGuess(int roundNumber, long deadline) throws IOException {
+        while( true ) {
+            // Past the deadline a guess that already arrived is still taken
+            this.socket.setSoTimeout((int) Math.max(1, deadline - System.currentTimeMillis()));
+            // Looked up every time, a resumed session moves to a new stream
+            DataInputStream inputStream = this.socketInputStream;
+            byte version = inputStream.readByte();
+            if( version != Protocol.VERSION ) {
+                throw new IOException("Unsupported protocol version " + version + ".");
+            }
+            byte opcode = inputStream.readByte();
+            int payloadSize = inputStream.readUnsignedShort();
+            this.lastSeenAt = System.nanoTime();
+            if( opcode == Protocol.PING ) {
+                inputStream.skipNBytes(payloadSize);
+                continue;
+            }
+            if( opcode != Protocol.GUESS ) {
+                throw new IOException("Unexpected message " + opcode + ", expected " + Protocol.GUESS + ".");
+            }
+            if( payloadSize < 6 ) {
+                throw new IOException("Truncated message " + opcode + ".");
+            }
+            int guessRoundNumber = inputStream.readShort();
+            int guess = inputStream.readInt();
+            inputStream.skipNBytes(payloadSize - 6);
+            if( guessRoundNumber == roundNumber ) {
+                return guess;
+            }
+        }
+    }
+
+    // Blocking engine: consumes the heartbeats that already arrived without blocking, for a player whose socket no one
+    // reads right now (queued, or waiting for another player's guess). Stops at the first frame that is not one.
+    public void drainHeartbeats() {
+        if( this.connection != null ) {
+            // The event loop reads everything as it arrives
+            return;
+        }
+        DataInputStream inputStream = this.socketInputStream;
+        try {
+            while( inputStream.available() >= Protocol.HEADER_SIZE ) {
+                inputStream.mark(Protocol.HEADER_SIZE);
+                byte version = inputStream.readByte();
+                byte opcode = inputStream.readByte();
+                int payloadSize = inputStream.readUnsignedShort();
+                if( version != Protocol.VERSION || opcode != Protocol.PING || payloadSize != 0 ) {
+                    inputStream.reset();
+                    return;
+                }
+                this.lastSeenAt = System.nanoTime();
+            }
+        } catch(IOException ignored) {
+            // The next read of the socket fails as well
+        }
+    }
+
+    // Rank points are the player's Elo rating, the tiers only tell the client how far it got
     public void updateRank(int i) {
         this.rankPoints += i;
         if( this.rankPoints < 0 ) {
@@ -82,11 +247,23 @@ public class Player {
     public int getRankTier() {
         return this.rankTier;
     }
-    public DataInputStream getSocketInputStream() {
-        return socketInputStream;
+    public PlayerConnection getConnection() {
+        return this.connection;
+    }
+    public Game getGame() {
+        return this.game;
     }
-    public DataOutputStream getSocketOutputStream() {
-        return socketOutputStream;
+    public ReentrantLock getSendLock() {
+        return this.sendLock;
+    }
+    public Timeout getQueueTimeout() {
+        return this.queueTimeout;
+    }
+    public long getQueuedAt() {
+        return this.queuedAt;
+    }
+    public long getLastSeenAt() {
+        return this.lastSeenAt;
     }
 
     // Setters
@@ -99,6 +276,25 @@ public class Player {
     public void setPassword(String password) {
         this.password = password;
     }
+    public void setToken(String token) {
+        this.token = token;
+    }
+    // With the event engine the channel is non-blocking, so frames go through the connection's queue instead
+    public void setConnection(PlayerConnection connection) {
+        this.connection = connection;
+    }
+    public void setGame(Game game) {
+        this.game = game;
+    }
+    public void setQueueTimeout(Timeout queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+    public void setQueuedAt(long queuedAt) {
+        this.queuedAt = queuedAt;
+    }
+    public void setLastSeenAt(long lastSeenAt) {
+        this.lastSeenAt = lastSeenAt;
+    }
     public void setRankPoints(int rankPoints) {
         this.rankPoints = rankPoints;
         updateRankTier();
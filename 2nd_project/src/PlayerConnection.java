@@ -0,0 +1,192 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class PlayerConnection {
+    // The first four states are handled by the acceptor, the others only exist with the event engine. An authenticating
+    // connection waits for an authentication thread to verify its credentials, a resuming connection takes over the
+    // session of the player whose token it sent.
+    public enum State { AUTHENTICATION, AUTHENTICATING, GAME_TYPE_SELECTION, RESUMING, IN_QUEUE, IN_GAME, AFTER_GAME_MENU }
+
+    private static final int BUFFER_SIZE = 1024;
+
+    private final SocketChannel channel;
+    // When the connection was accepted, its authentication time is measured from it
+    private final long acceptedAt = System.nanoTime();
+    private volatile Player player;
+    private final Queue<ByteBuffer> outboundMessages = new ArrayDeque<>();
+    private ByteBuffer[] gatheredMessages = new ByteBuffer[16];
+    private final AtomicBoolean isFlushRequested = new AtomicBoolean(false);
+    // With the event engine the connection's event loop reads while the game's event loop polls, and any thread can queue messages
+    private final ReentrantLock inboundLock = new ReentrantLock();
+    private final ReentrantLock outboundLock = new ReentrantLock();
+    private ByteBuffer inboundBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private volatile State state = State.AUTHENTICATION;
+    private volatile Game game = null;
+    private volatile boolean isClosed = false;
+    private GameEventLoop eventLoop = null;
+    private boolean isRankedGame = false;
+    // Deadline of the end game menu, only touched on the connection's event loop
+    private Timeout sessionTimeout = null;
+
+    public PlayerConnection(SocketChannel channel, Player player) {
+        this.channel = channel;
+        this.player = player;
+    }
+
+    // Reads whatever is available on the channel into the inbound buffer, returns -1 on end of stream
+    public int readFromChannel() throws IOException {
+        try {
+            this.inboundLock.lock();
+            if( !this.inboundBuffer.hasRemaining() ) {
+                ByteBuffer biggerBuffer = ByteBuffer.allocate(this.inboundBuffer.capacity() * 2);
+                this.inboundBuffer.flip();
+                biggerBuffer.put(this.inboundBuffer);
+                this.inboundBuffer = biggerBuffer;
+            }
+            int numberOfBytes = this.channel.read(this.inboundBuffer);
+            if( numberOfBytes > 0 ) {
+                this.player.setLastSeenAt(System.nanoTime());
+                Metrics.BYTES_RECEIVED.add(numberOfBytes);
+            }
+            return numberOfBytes;
+        } finally {
+            this.inboundLock.unlock();
+        }
+    }
+
+    // Returns the next frame, or null if it has not fully arrived yet. Heartbeats were already counted when they were
+    // read, they are skipped.
+    public Frame pollFrame() throws IOException {
+        try {
+            this.inboundLock.lock();
+            this.inboundBuffer.flip();
+            try {
+                Frame frame = Protocol.pollFrame(this.inboundBuffer);
+                while( frame != null && frame.getOpcode() == Protocol.PING ) {
+                    frame = Protocol.pollFrame(this.inboundBuffer);
+                }
+                return frame;
+            } finally {
+                this.inboundBuffer.compact();
+            }
+        } finally {
+            this.inboundLock.unlock();
+        }
+    }
+
+    // Queues a frame without copying it, so a frame broadcast to a whole game is encoded once. Frames sent to a closed
+    // connection are dropped, the loss is noticed by its reads.
+    public void queueFrame(byte[] frame) {
+        if( this.isClosed ) {
+            return;
+        }
+        try {
+            this.outboundLock.lock();
+            this.outboundMessages.add(ByteBuffer.wrap(frame));
+        } finally {
+            this.outboundLock.unlock();
+        }
+    }
+
+    // Writes the queued messages with gathering writes (all of them in one call), returns true when nothing is left to write
+    public boolean writeToChannel() throws IOException {
+        try {
+            this.outboundLock.lock();
+            while( !this.outboundMessages.isEmpty() ) {
+                int numberOfMessages = this.outboundMessages.size();
+                this.gatheredMessages = this.outboundMessages.toArray(this.gatheredMessages);
+                Metrics.BYTES_SENT.add(this.channel.write(this.gatheredMessages, 0, numberOfMessages));
+                Arrays.fill(this.gatheredMessages, 0, numberOfMessages, null);
+                while( !this.outboundMessages.isEmpty() && !this.outboundMessages.peek().hasRemaining() ) {
+                    this.outboundMessages.remove();
+                }
+                if( !this.outboundMessages.isEmpty() ) {
+                    // The socket's send buffer is full
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            this.outboundLock.unlock();
+        }
+    }
+
+    // Asks the connection's event loop to write the queued messages, at most one request is pending at a time
+    public void requestFlush() {
+        if( this.eventLoop != null && !this.isFlushRequested.getAndSet(true) ) {
+            this.eventLoop.flush(this);
+        }
+    }
+
+    // Called by the event loop right before it flushes, messages queued from now on need a new request
+    public void clearFlushRequest() {
+        this.isFlushRequested.set(false);
+    }
+
+    public boolean hasBufferedInput() {
+        try {
+            this.inboundLock.lock();
+            return this.inboundBuffer.position() > 0;
+        } finally {
+            this.inboundLock.unlock();
+        }
+    }
+
+    // Getters
+    public SocketChannel getChannel() {
+        return this.channel;
+    }
+    public Player getPlayer() {
+        return this.player;
+    }
+    public long getAcceptedAt() {
+        return this.acceptedAt;
+    }
+    public State getState() {
+        return this.state;
+    }
+    public Game getGame() {
+        return this.game;
+    }
+    public boolean isClosed() {
+        return this.isClosed;
+    }
+    public GameEventLoop getEventLoop() {
+        return this.eventLoop;
+    }
+    public boolean isRankedGame() {
+        return this.isRankedGame;
+    }
+    public Timeout getSessionTimeout() {
+        return this.sessionTimeout;
+    }
+
+    // Setters
+    public void setPlayer(Player player) {
+        this.player = player;
+    }
+    public void setState(State state) {
+        this.state = state;
+    }
+    public void setGame(Game game) {
+        this.game = game;
+    }
+    public void setClosed() {
+        this.isClosed = true;
+    }
+    public void setEventLoop(GameEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+    public void setRankedGame(boolean isRankedGame) {
+        this.isRankedGame = isRankedGame;
+    }
+    public void setSessionTimeout(Timeout sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+    }
+}
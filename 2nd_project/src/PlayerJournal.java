@@ -0,0 +1,304 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class PlayerJournal implements PlayerStore {
+    private static final String REGISTRATION_RECORD = "R";
+    private static final String RANK_DELTA_RECORD = "D";
+    private static final String CREDENTIAL_RECORD = "C";
+    private static final String SEQUENCE_HEADER = "#";
+    // Snapshots written since ranked games are rated with Elo carry it, the rank points of older ones are rescaled
+    private static final String ELO_RATINGS_HEADER = "!elo";
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private final Path snapshotFile;
+    private final Path journalFile;
+    private final Path compactingFile;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ExecutorService compactionThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Player Journal Compaction Thread");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private FileChannel journalChannel = null;
+    private long nextSequenceNumber = 1;
+    private int recordsSinceCompaction = 0;
+    private boolean isCompacting = false;
+
+    public PlayerJournal(String snapshotFile, String journalFile) {
+        this.snapshotFile = Paths.get(snapshotFile);
+        this.journalFile = Paths.get(journalFile);
+        this.compactingFile = Paths.get(journalFile + ".compacting");
+    }
+
+    // Loads the snapshot and replays the journal records written after it
+    @Override
+    public void load(Map<String, Player> players) throws IOException {
+        long[] read = this.readPlayers(players);
+        long lastSequenceNumber = read[0];
+        int replayedRecords = (int) read[1];
+        if( read[2] == 1 ) {
+            // Folds everything into a snapshot of the hashes and ratings at once, the plain passwords and legacy rank
+            // points leave the disk with the journals
+            writeSnapshot(this.snapshotFile, players, lastSequenceNumber);
+            Files.deleteIfExists(this.compactingFile);
+            Files.deleteIfExists(this.journalFile);
+            replayedRecords = 0;
+        }
+
+        try {
+            this.lock.lock();
+            this.nextSequenceNumber = lastSequenceNumber + 1;
+            this.recordsSinceCompaction = replayedRecords;
+            this.journalChannel = openJournal(this.journalFile);
+            // Folds whatever was replayed into the snapshot, so the next start has less to replay
+            if( replayedRecords > 0 || Files.exists(this.compactingFile) ) {
+                this.startCompaction();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Reads the players like load, but leaves the files as they are and does not start the journal, for a store that
+    // migrates them
+    public void read(Map<String, Player> players) throws IOException {
+        this.readPlayers(players);
+    }
+
+    // Returns the last sequence number, the number of journal records replayed, and 1 if passwords were hashed or rank
+    // points seeded, so the files still hold the old ones
+    private long[] readPlayers(Map<String, Player> players) throws IOException {
+        long[] snapshot = readSnapshot(this.snapshotFile, players);
+        long lastSequenceNumber = snapshot[0];
+        long replayedRecords = 0;
+        for( Path file: new Path[]{ this.compactingFile, this.journalFile } ) {
+            long[] replayed = replayJournal(file, players, lastSequenceNumber);
+            lastSequenceNumber = Math.max(lastSequenceNumber, replayed[0]);
+            replayedRecords += replayed[1];
+        }
+
+        boolean isChanged = !PasswordHasher.hashPlainPasswords(players.values()).isEmpty();
+        if( snapshot[1] == 0 ) {
+            EloRating.seedLegacyRatings(players.values());
+            isChanged = true;
+        }
+        return new long[]{ lastSequenceNumber, replayedRecords, isChanged ? 1 : 0 };
+    }
+
+    @Override
+    public void saveRegistration(Player player) throws IOException {
+        this.append(List.of(REGISTRATION_RECORD + "," + player.getUsername() + "," + player.getPassword() + "," + player.getRankPoints()));
+    }
+
+    @Override
+    public void saveCredential(Player player) throws IOException {
+        this.append(List.of(CREDENTIAL_RECORD + "," + player.getUsername() + "," + player.getPassword()));
+    }
+
+    @Override
+    public void saveRankChanges(List<RankChange> rankChanges) throws IOException {
+        List<String> records = new ArrayList<>(rankChanges.size());
+        for( RankChange rankChange: rankChanges ) {
+            records.add(RANK_DELTA_RECORD + "," + rankChange.getPlayer().getUsername() + "," + rankChange.getRankDelta());
+        }
+        this.append(records);
+    }
+
+    // Writes the records at the end of the journal in one write and forces them to disk before returning
+    private void append(List<String> records) throws IOException {
+        try {
+            this.lock.lock();
+            StringBuilder lines = new StringBuilder();
+            for( String record: records ) {
+                lines.append(this.nextSequenceNumber).append(',').append(record).append('\n');
+                this.nextSequenceNumber++;
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while( buffer.hasRemaining() ) {
+                this.journalChannel.write(buffer);
+            }
+            this.journalChannel.force(false);
+            this.recordsSinceCompaction += records.size();
+
+            if( this.recordsSinceCompaction >= COMPACTION_THRESHOLD && !this.isCompacting ) {
+                this.startCompaction();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Must be called with the lock held
+    private void startCompaction() {
+        this.isCompacting = true;
+        this.recordsSinceCompaction = 0;
+        this.compactionThread.execute(this::compact);
+    }
+
+    private void compact() {
+        try {
+            try {
+                this.lock.lock();
+                // Moves the current journal aside, new records go to a fresh journal while the old one is folded
+                if( !Files.exists(this.compactingFile) ) {
+                    this.journalChannel.close();
+                    try {
+                        Files.move(this.journalFile, this.compactingFile, StandardCopyOption.ATOMIC_MOVE);
+                    } catch(IOException e) {
+                        // The records keep going to the journal that could not be moved
+                        this.journalChannel = openJournal(this.journalFile);
+                        throw e;
+                    }
+                    this.journalChannel = openJournal(this.journalFile);
+                }
+            } finally {
+                this.lock.unlock();
+            }
+
+            Map<String, Player> players = new HashMap<>();
+            long lastSequenceNumber = readSnapshot(this.snapshotFile, players)[0];
+            lastSequenceNumber = Math.max(lastSequenceNumber, replayJournal(this.compactingFile, players, lastSequenceNumber)[0]);
+            writeSnapshot(this.snapshotFile, players, lastSequenceNumber);
+            Files.delete(this.compactingFile);
+        } catch(IOException e) {
+            Log.error("Failed to compact the player journal.", e);
+        } finally {
+            try {
+                this.lock.lock();
+                this.isCompacting = false;
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+
+    private static FileChannel openJournal(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        // Ends a record cut short by a crash, so the next record starts on its own line
+        if( channel.size() > 0 ) {
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            channel.read(lastByte, channel.size() - 1);
+            if( lastByte.get(0) != '\n' ) {
+                channel.write(ByteBuffer.wrap(new byte[]{ '\n' }));
+            }
+        }
+        return channel;
+    }
+
+    // Returns the sequence number of the last journal record included in the snapshot, and 1 if its rank points are Elo
+    // ratings (a store that has no snapshot yet only holds players registered with Elo)
+    private static long[] readSnapshot(Path file, Map<String, Player> players) throws IOException {
+        long lastSequenceNumber = 0;
+        if( !Files.exists(file) ) {
+            return new long[]{ lastSequenceNumber, 1 };
+        }
+        long isEloRated = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if( line.isEmpty() ) {
+                    continue;
+                }
+                if( line.equals(ELO_RATINGS_HEADER) ) {
+                    isEloRated = 1;
+                    continue;
+                }
+                try {
+                    if( line.startsWith(SEQUENCE_HEADER) ) {
+                        lastSequenceNumber = Long.parseLong(line.substring(SEQUENCE_HEADER.length()));
+                        continue;
+                    }
+                    String[] userData = line.split(",");
+                    String username = userData[0];
+                    String password = userData[1];
+                    int playerRank = Integer.parseInt(userData[2]);
+                    players.put(username, new Player(username, password, playerRank));
+                } catch(RuntimeException e) {
+                    // Like a bad journal record, one bad line must not keep the other players from loading
+                    Log.warn("Ignoring malformed player record: " + line);
+                }
+            }
+        }
+        return new long[]{ lastSequenceNumber, isEloRated };
+    }
+
+    // Applies the records newer than the snapshot, returns the last sequence number and the number of records applied
+    private static long[] replayJournal(Path file, Map<String, Player> players, long snapshotSequenceNumber) throws IOException {
+        long lastSequenceNumber = 0;
+        long replayedRecords = 0;
+        if( !Files.exists(file) ) {
+            return new long[]{ lastSequenceNumber, replayedRecords };
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] record = line.split(",");
+                long sequenceNumber;
+                try {
+                    sequenceNumber = Long.parseLong(record[0]);
+                    if( sequenceNumber <= snapshotSequenceNumber ) {
+                        continue;
+                    }
+                    if( record[1].equals(REGISTRATION_RECORD) ) {
+                        players.put(record[2], new Player(record[2], record[3], Integer.parseInt(record[4])));
+                    } else if( record[1].equals(RANK_DELTA_RECORD) ) {
+                        Player player = players.get(record[2]);
+                        if( player != null ) {
+                            player.setRankPoints(player.getRankPoints() + Integer.parseInt(record[3]));
+                        }
+                    } else if( record[1].equals(CREDENTIAL_RECORD) ) {
+                        Player player = players.get(record[2]);
+                        if( player != null ) {
+                            player.setPassword(record[3]);
+                        }
+                    } else {
+                        throw new IllegalArgumentException("Unknown record type " + record[1]);
+                    }
+                } catch(RuntimeException e) {
+                    // A record cut short by a crash was never acknowledged, so it is skipped
+                    Log.warn("Ignoring incomplete player journal record: " + line);
+                    continue;
+                }
+                lastSequenceNumber = sequenceNumber;
+                replayedRecords++;
+            }
+        }
+        return new long[]{ lastSequenceNumber, replayedRecords };
+    }
+
+    // Writes the snapshot to a temporary file and moves it over the old one, so a crash never leaves half a snapshot
+    private static void writeSnapshot(Path file, Map<String, Player> players, long lastSequenceNumber) throws IOException {
+        Path temporaryFile = Paths.get(file + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            writer.write(SEQUENCE_HEADER + lastSequenceNumber);
+            writer.newLine();
+            writer.write(ELO_RATINGS_HEADER);
+            writer.newLine();
+            for (Player player : players.values()) {
+                writer.write(player.getUsername() + "," + player.getPassword() + "," + player.getRankPoints());
+                writer.newLine();
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
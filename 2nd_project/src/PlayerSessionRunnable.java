@@ -0,0 +1,50 @@
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+
+public class PlayerSessionRunnable implements Runnable {
+    private final Player player;
+
+    public PlayerSessionRunnable(Player player) {
+        this.player = player;
+    }
+
+    @Override
+    public void run() {
+        GameServer.takeOverReading(this.player);
+        try {
+            // A player that has not queued again when the session times out is disconnected
+            long deadline = System.currentTimeMillis() + GameServer.SESSION_TIMEOUT_MILLIS;
+
+            // Gets client end game choice, a guess that missed the last round's deadline may still come first, and
+            // leaderboard queries are answered meanwhile
+            Frame frame = this.player.readFrameBefore(deadline);
+            byte[] answer = null;
+            while( frame.getOpcode() == Protocol.GUESS || (answer = GameServer.answerLeaderboardQuery(this.player, frame)) != null ) {
+                if( answer != null ) {
+                    this.player.send(answer);
+                    this.player.flush();
+                    answer = null;
+                }
+                frame = this.player.readFrameBefore(deadline);
+            }
+            int choice = Protocol.expect(frame, Protocol.AFTER_GAME).readByte();
+            if( choice == 2 ) {
+                GameServer.playerLogout(this.player);
+            } else if( choice == 1 ) {
+                Log.info(this.player.getUsername() + " chose to play again.");
+                // Handling game type selection
+                boolean isRankedGame = GameServer.gameTypeSelection(this.player);
+                this.player.getSocket().setSoTimeout(0);
+                // Add player to respective queue, then setup a game if possible
+                GameServer.enterMatchmaking(this.player, isRankedGame);
+            } else {
+                Log.warn("Unexpected input from player " + this.player.getUsername() + ".");
+            }
+        } catch(SocketTimeoutException e) {
+            Log.warn("Player " + this.player.getUsername() + " did not answer the end game menu in time.");
+            GameServer.disconnectPlayer(this.player);
+        } catch(IOException e) {
+            Log.error("Failed to get endgame choice from player " + this.player.getUsername() + ".");
+        }
+    }
+}
@@ -0,0 +1,17 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+public interface PlayerStore {
+    // Adds every stored player to the given map, keyed by username
+    void load(Map<String, Player> players) throws IOException;
+
+    // Stores a newly registered player, durable once this returns
+    void saveRegistration(Player player) throws IOException;
+
+    // Stores the new credential of a player (its password hashed again), durable once this returns
+    void saveCredential(Player player) throws IOException;
+
+    // Stores a batch of rank changes with a single write, all durable once this returns
+    void saveRankChanges(List<RankChange> rankChanges) throws IOException;
+}
@@ -0,0 +1,271 @@
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+// Binary frames exchanged by GameServer and GameClient: version (1 byte), opcode (1 byte), payload length (2 bytes), payload
+public class Protocol {
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_PAYLOAD_SIZE = 0xFFFF;
+
+    // Client to server
+    public static final byte AUTHENTICATE = 0x01;        // choice (byte: 1 login, 2 register), username (string), password (string)
+    public static final byte GAME_TYPE = 0x02;           // choice (byte: 1 simple, 2 ranked)
+    public static final byte GUESS = 0x03;               // round (short), guess (int)
+    public static final byte AFTER_GAME = 0x04;          // choice (byte: 1 play again, 2 disconnect)
+    public static final byte PING = 0x05;                // no payload, heartbeat sent every few seconds
+    public static final byte RESUME = 0x06;              // session token (string), instead of authenticating after a reconnect
+    public static final byte LEADERBOARD_QUERY = 0x07;   // number of top players (byte), from the game type or end game menu
+    public static final byte POSITION_QUERY = 0x08;      // no payload, from the game type or end game menu
+
+    // Server to client
+    public static final byte AUTHENTICATION_RESULT = 0x41;  // status (byte), session token (string: empty unless authenticated)
+    public static final byte QUEUED = 0x42;                 // ranked (byte)
+    public static final byte GAME_START = 0x43;             // ranked (byte), rounds (short), your index (byte), players (byte), usernames (strings)
+    public static final byte ROUND_START = 0x44;            // round (short), lower bound (short), upper bound (short)
+    public static final byte TURN = 0x45;                   // guessing player index (byte: ALL_PLAYERS in simultaneous rounds)
+    public static final byte GUESS_ACK = 0x46;              // accepted (byte: 0 when out of range)
+    public static final byte ROUND_RESULT = 0x47;           // round (short), target (short), winner index (byte: NO_ROUND_WINNER if every player forfeited), your guess (int), your distance (int)
+    public static final byte GAME_END = 0x48;               // rounds won (short), rounds (short)
+    public static final byte RANK_DELTA = 0x49;             // delta (int), rank points (int), previous tier (byte), tier (byte)
+    public static final byte LEADERBOARD = 0x4A;            // players (byte), then position (int), rank points (int), username (string) of each
+    public static final byte POSITION = 0x4B;               // position (int), ranked players (int), rank points (int)
+
+    // Turn of every player at once
+    public static final byte ALL_PLAYERS = -1;
+    // Round result of a round where no player guessed in time
+    public static final byte NO_ROUND_WINNER = -1;
+
+    // Authentication result statuses
+    public static final byte LOGIN_SUCCESSFUL = 1;
+    public static final byte REGISTRATION_SUCCESSFUL = 2;
+    public static final byte INVALID_LOGIN = 3;
+    public static final byte USERNAME_TAKEN = 4;
+    public static final byte INVALID_CREDENTIALS = 5;
+    // The session is queued or in a game, the game start comes next
+    public static final byte SESSION_RESUMED = 6;
+    // The session waits for the end game menu choice
+    public static final byte SESSION_RESUMED_AFTER_GAME = 7;
+    public static final byte INVALID_TOKEN = 8;
+    // Too many logins are waiting to be verified, the client may try again later
+    public static final byte SERVER_BUSY = 9;
+
+    // Frames without variable fields are rendered once, every round sends them to every player
+    private static final byte[][] TURN_FRAMES = new byte[Byte.MAX_VALUE + 1][];
+    private static final byte[] ALL_PLAYERS_TURN_FRAME = frame(TURN, 1).put(ALL_PLAYERS).array();
+    private static final byte[] GUESS_ACCEPTED_FRAME = frame(GUESS_ACK, 1).put((byte) 1).array();
+    private static final byte[] GUESS_REJECTED_FRAME = frame(GUESS_ACK, 1).put((byte) 0).array();
+
+    static {
+        for( int playerIndex = 0; playerIndex < TURN_FRAMES.length; playerIndex++ ) {
+            TURN_FRAMES[playerIndex] = frame(TURN, 1).put((byte) playerIndex).array();
+        }
+    }
+
+    // Encoding
+    public static byte[] authenticate(int choice, String username, String password) {
+        byte[] usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        byte[] passwordBytes = password.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(AUTHENTICATE, 1 + 2 + usernameBytes.length + 2 + passwordBytes.length);
+        frame.put((byte) choice);
+        putString(frame, usernameBytes);
+        putString(frame, passwordBytes);
+        return frame.array();
+    }
+
+    public static byte[] gameType(int choice) {
+        return frame(GAME_TYPE, 1).put((byte) choice).array();
+    }
+
+    // The round number lets the server drop a guess that arrives after its round was resolved
+    public static byte[] guess(int roundNumber, int guess) {
+        return frame(GUESS, 6).putShort((short) roundNumber).putInt(guess).array();
+    }
+
+    public static byte[] afterGame(int choice) {
+        return frame(AFTER_GAME, 1).put((byte) choice).array();
+    }
+
+    public static byte[] ping() {
+        return frame(PING, 0).array();
+    }
+
+    public static byte[] leaderboardQuery(int numberOfPlayers) {
+        return frame(LEADERBOARD_QUERY, 1).put((byte) numberOfPlayers).array();
+    }
+
+    public static byte[] positionQuery() {
+        return frame(POSITION_QUERY, 0).array();
+    }
+
+    public static byte[] resume(String token) {
+        byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(RESUME, 2 + tokenBytes.length);
+        putString(frame, tokenBytes);
+        return frame.array();
+    }
+
+    public static byte[] authenticationResult(byte status, String token) {
+        byte[] tokenBytes = token.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = frame(AUTHENTICATION_RESULT, 1 + 2 + tokenBytes.length);
+        frame.put(status);
+        putString(frame, tokenBytes);
+        return frame.array();
+    }
+
+    public static byte[] queued(boolean isRanked) {
+        return frame(QUEUED, 1).put((byte) (isRanked ? 1 : 0)).array();
+    }
+
+    public static byte[] gameStart(boolean isRanked, int numberOfRounds, List<Player> players, int playerIndex) {
+        byte[][] usernames = new byte[players.size()][];
+        int payloadSize = 1 + 2 + 1 + 1;
+        for( int i = 0; i < players.size(); i++ ) {
+            usernames[i] = players.get(i).getUsername().getBytes(StandardCharsets.UTF_8);
+            payloadSize += 2 + usernames[i].length;
+        }
+        ByteBuffer frame = frame(GAME_START, payloadSize);
+        frame.put((byte) (isRanked ? 1 : 0)).putShort((short) numberOfRounds).put((byte) playerIndex).put((byte) players.size());
+        for( byte[] username: usernames ) {
+            putString(frame, username);
+        }
+        return frame.array();
+    }
+
+    // Sent every round, encoded straight into its array
+    public static byte[] roundStart(int roundNumber, int lowerBound, int upperBound) {
+        byte[] frame = header(ROUND_START, 6);
+        putShort(frame, HEADER_SIZE, roundNumber);
+        putShort(frame, HEADER_SIZE + 2, lowerBound);
+        putShort(frame, HEADER_SIZE + 4, upperBound);
+        return frame;
+    }
+
+    // The same frame is returned every time, queued frames are never modified
+    public static byte[] turn(int playerIndex) {
+        return playerIndex == ALL_PLAYERS ? ALL_PLAYERS_TURN_FRAME : TURN_FRAMES[playerIndex];
+    }
+
+    // The same frame is returned every time, queued frames are never modified
+    public static byte[] guessAck(boolean isAccepted) {
+        return isAccepted ? GUESS_ACCEPTED_FRAME : GUESS_REJECTED_FRAME;
+    }
+
+    // Sent every round to every player, encoded straight into its array
+    public static byte[] roundResult(int roundNumber, int targetNumber, int roundWinnerIndex, int guess, int distance) {
+        byte[] frame = header(ROUND_RESULT, 13);
+        putShort(frame, HEADER_SIZE, roundNumber);
+        putShort(frame, HEADER_SIZE + 2, targetNumber);
+        frame[HEADER_SIZE + 4] = (byte) roundWinnerIndex;
+        putInt(frame, HEADER_SIZE + 5, guess);
+        putInt(frame, HEADER_SIZE + 9, distance);
+        return frame;
+    }
+
+    public static byte[] gameEnd(int roundsWon, int numberOfRounds) {
+        return frame(GAME_END, 4).putShort((short) roundsWon).putShort((short) numberOfRounds).array();
+    }
+
+    public static byte[] rankDelta(int rankDelta, int rankPoints, int previousRankTier, int rankTier) {
+        return frame(RANK_DELTA, 10).putInt(rankDelta).putInt(rankPoints).put((byte) previousRankTier).put((byte) rankTier).array();
+    }
+
+    public static byte[] leaderboard(List<Leaderboard.Standing> topPlayers) {
+        byte[][] usernames = new byte[topPlayers.size()][];
+        int payloadSize = 1;
+        for( int i = 0; i < topPlayers.size(); i++ ) {
+            usernames[i] = topPlayers.get(i).getUsername().getBytes(StandardCharsets.UTF_8);
+            payloadSize += 4 + 4 + 2 + usernames[i].length;
+        }
+        ByteBuffer frame = frame(LEADERBOARD, payloadSize);
+        frame.put((byte) topPlayers.size());
+        for( int i = 0; i < topPlayers.size(); i++ ) {
+            frame.putInt(topPlayers.get(i).getPosition()).putInt(topPlayers.get(i).getRankPoints());
+            putString(frame, usernames[i]);
+        }
+        return frame.array();
+    }
+
+    public static byte[] position(int position, int numberOfRankedPlayers, int rankPoints) {
+        return frame(POSITION, 12).putInt(position).putInt(numberOfRankedPlayers).putInt(rankPoints).array();
+    }
+
+    // Decoding
+
+    // Blocks until a whole frame has arrived
+    public static Frame readFrame(DataInputStream inputStream) throws IOException {
+        byte version = inputStream.readByte();
+        if( version != VERSION ) {
+            throw new IOException("Unsupported protocol version " + version + ".");
+        }
+        byte opcode = inputStream.readByte();
+        byte[] payload = new byte[inputStream.readUnsignedShort()];
+        inputStream.readFully(payload);
+        return new Frame(opcode, ByteBuffer.wrap(payload));
+    }
+
+    // Blocks until a whole frame has arrived and fails if it is not the expected one
+    public static Frame readFrame(DataInputStream inputStream, byte expectedOpcode) throws IOException {
+        return expect(readFrame(inputStream), expectedOpcode);
+    }
+
+    public static Frame expect(Frame frame, byte expectedOpcode) throws IOException {
+        if( frame.getOpcode() != expectedOpcode ) {
+            throw new IOException("Unexpected message " + frame.getOpcode() + ", expected " + expectedOpcode + ".");
+        }
+        return frame;
+    }
+
+    // Takes the next frame out of a buffer in read mode, or returns null (consuming nothing) if it has not fully arrived yet
+    public static Frame pollFrame(ByteBuffer buffer) throws IOException {
+        if( buffer.remaining() < HEADER_SIZE ) {
+            return null;
+        }
+        int start = buffer.position();
+        byte version = buffer.get(start);
+        if( version != VERSION ) {
+            throw new IOException("Unsupported protocol version " + version + ".");
+        }
+        int payloadSize = buffer.getShort(start + 2) & 0xFFFF;
+        if( buffer.remaining() < HEADER_SIZE + payloadSize ) {
+            return null;
+        }
+        byte[] payload = new byte[payloadSize];
+        buffer.position(start + HEADER_SIZE);
+        buffer.get(payload);
+        return new Frame(buffer.get(start + 1), ByteBuffer.wrap(payload));
+    }
+
+    private static ByteBuffer frame(byte opcode, int payloadSize) {
+        if( payloadSize > MAX_PAYLOAD_SIZE ) {
+            throw new IllegalArgumentException("Frame payload too big: " + payloadSize + " bytes.");
+        }
+        return ByteBuffer.allocate(HEADER_SIZE + payloadSize).put(VERSION).put(opcode).putShort((short) payloadSize);
+    }
+
+    // The same header frame() writes, without a ByteBuffer around the array
+    private static byte[] header(byte opcode, int payloadSize) {
+        byte[] frame = new byte[HEADER_SIZE + payloadSize];
+        frame[0] = VERSION;
+        frame[1] = opcode;
+        putShort(frame, 2, payloadSize);
+        return frame;
+    }
+
+    // Big-endian, like ByteBuffer and DataInputStream
+    private static void putShort(byte[] frame, int offset, int value) {
+        frame[offset] = (byte) (value >>> 8);
+        frame[offset + 1] = (byte) value;
+    }
+
+    private static void putInt(byte[] frame, int offset, int value) {
+        putShort(frame, offset, value >>> 16);
+        putShort(frame, offset + 2, value);
+    }
+
+    private static void putString(ByteBuffer frame, byte[] bytes) {
+        frame.putShort((short) bytes.length).put(bytes);
+    }
+}
@@ -0,0 +1,18 @@
+public class RankChange {
+    private final Player player;
+    private final int rankDelta;
+
+    // The player already holds its new rank points
+    public RankChange(Player player, int rankDelta) {
+        this.player = player;
+        this.rankDelta = rankDelta;
+    }
+
+    // Getters
+    public Player getPlayer() {
+        return this.player;
+    }
+    public int getRankDelta() {
+        return this.rankDelta;
+    }
+}
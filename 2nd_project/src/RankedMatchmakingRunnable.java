@@ -0,0 +1,251 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class RankedMatchmakingRunnable implements Runnable {
+    private static final long SWEEP_INTERVAL_MILLIS = 5000;
+    // Players are matched with opponents rated at most this far from them (in rank points)
+    private static final int RATING_WINDOW = 200;
+    // Every time a player waits this long, its window grows by as much again
+    private static final long WINDOW_WIDENING_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final int minTeamSize;
+    private final int maxTeamSize;
+    // Queued players ordered by rating (then arrival), the nearest opponents of a player are its neighbours in the list
+    private final ConcurrentSkipListSet<QueuedPlayer> ratingIndex = new ConcurrentSkipListSet<>();
+    private final ConcurrentMap<Player, QueuedPlayer> queuedPlayers = new ConcurrentHashMap<>();
+    private final AtomicLong numberOfArrivals = new AtomicLong(0);
+    // Taken to add, match or remove players, so a team leaves the queue all at once. No I/O happens while it is held,
+    // and lookups (nearest opponents, queued or not, queue size) go without it.
+    private final ReentrantLock matchLock = new ReentrantLock();
+    private boolean isStopRequested = false;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public RankedMatchmakingRunnable(int minTeamSize, int maxTeamSize) {
+        this.minTeamSize = minTeamSize;
+        this.maxTeamSize = maxTeamSize;
+    }
+
+    public void requestStop() {
+        try {
+            lock.lock();
+            this.isStopRequested = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean getIsStopRequested() {
+        try {
+            lock.lock();
+            return this.isStopRequested;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Queues the player, returns the team its arrival completed with its nearest opponents (only those within the
+    // rating window are looked at)
+    public List<List<Player>> addPlayer(Player player) {
+        QueuedPlayer queuedPlayer = new QueuedPlayer(player, player.getRankPoints(), this.numberOfArrivals.getAndIncrement(), System.nanoTime());
+        List<List<Player>> teams = new ArrayList<>();
+        try {
+            this.matchLock.lock();
+            this.ratingIndex.add(queuedPlayer);
+            this.queuedPlayers.put(player, queuedPlayer);
+            List<Player> team = this.pollTeam(queuedPlayer, RATING_WINDOW);
+            if( team != null ) {
+                teams.add(team);
+            }
+        } finally {
+            this.matchLock.unlock();
+        }
+        if( Log.isEnabled(Log.Level.DEBUG) ) {
+            Log.debug("Ranked game queue: Rating " + queuedPlayer.rating + " -> " + this.queuedPlayers.size() + " player/s waiting.");
+        }
+        return teams;
+    }
+
+    // Returns false if the player is not queued (anymore)
+    public boolean removePlayer(Player player) {
+        try {
+            this.matchLock.lock();
+            QueuedPlayer queuedPlayer = this.queuedPlayers.remove(player);
+            if( queuedPlayer == null ) {
+                return false;
+            }
+            this.ratingIndex.remove(queuedPlayer);
+        } finally {
+            this.matchLock.unlock();
+        }
+        if( Log.isEnabled(Log.Level.DEBUG) ) {
+            Log.debug("Ranked game queue: Removed " + player.getUsername() + ".");
+        }
+        return true;
+    }
+
+    public boolean containsPlayer(Player player) {
+        return this.queuedPlayers.containsKey(player);
+    }
+
+    // Up to count queued players, nearest rated to the player first, whether the player is queued or not
+    public List<Player> findNearestOpponents(Player player, int count) {
+        QueuedPlayer queuedPlayer = this.queuedPlayers.get(player);
+        if( queuedPlayer == null ) {
+            // Sorts before every queued player of the same rating
+            queuedPlayer = new QueuedPlayer(player, player.getRankPoints(), -1, 0);
+        }
+        List<Player> opponents = new ArrayList<>(count);
+        for( QueuedPlayer opponent: this.nearestOpponents(queuedPlayer, count, Integer.MAX_VALUE) ) {
+            opponents.add(opponent.player);
+        }
+        return opponents;
+    }
+
+    // Runs the action for every queued player, with the match lock held
+    public void forEachQueuedPlayer(Consumer<Player> action) {
+        try {
+            this.matchLock.lock();
+            for( QueuedPlayer queuedPlayer: this.ratingIndex ) {
+                action.accept(queuedPlayer.player);
+            }
+        } finally {
+            this.matchLock.unlock();
+        }
+    }
+
+    public int getNumberOfQueuedPlayers() {
+        return this.queuedPlayers.size();
+    }
+
+    @Override
+    public void run() {
+        Log.info(Thread.currentThread().getName() + " started.");
+        while( !this.getIsStopRequested() ) {
+            try {
+                Thread.sleep(SWEEP_INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            List<List<Player>> teams = this.sweep();
+            if( !teams.isEmpty() ) {
+                GameServer.startGames(GameServer.getGameThreadPool(), teams, true);
+            }
+        }
+        Log.info(Thread.currentThread().getName() + " stopped.");
+    }
+
+    // Matches the players that waited too long for opponents near their rating with opponents further away, the
+    // longest waiting first
+    private List<List<Player>> sweep() {
+        List<List<Player>> teams = new ArrayList<>();
+        try {
+            this.matchLock.lock();
+            List<QueuedPlayer> waitingPlayers = new ArrayList<>(this.ratingIndex);
+            waitingPlayers.sort(Comparator.comparingLong(queuedPlayer -> queuedPlayer.arrival));
+            long now = System.nanoTime();
+            for( QueuedPlayer queuedPlayer: waitingPlayers ) {
+                int widenings = (int) ((now - queuedPlayer.enqueuedAt) / WINDOW_WIDENING_NANOS);
+                if( widenings == 0 ) {
+                    // The players after it arrived later still
+                    break;
+                }
+                if( this.queuedPlayers.get(queuedPlayer.player) != queuedPlayer ) {
+                    // Matched earlier in this sweep
+                    continue;
+                }
+                int window = RATING_WINDOW * (widenings + 1);
+                List<Player> team = this.pollTeam(queuedPlayer, window);
+                if( team != null ) {
+                    Log.info("Ranked game queue: Matched " + team.size() + " players within " + window + " rank points of " + queuedPlayer.player.getUsername() + ".");
+                    teams.add(team);
+                }
+            }
+        } finally {
+            this.matchLock.unlock();
+        }
+        return teams;
+    }
+
+    // Takes the player and its nearest opponents out of the queue if they make a team, must be called with the match lock held
+    private List<Player> pollTeam(QueuedPlayer queuedPlayer, int window) {
+        List<QueuedPlayer> opponents = this.nearestOpponents(queuedPlayer, this.maxTeamSize - 1, window);
+        if( opponents.size() + 1 < this.minTeamSize ) {
+            return null;
+        }
+        List<Player> team = new ArrayList<>(opponents.size() + 1);
+        team.add(queuedPlayer.player);
+        this.remove(queuedPlayer);
+        for( QueuedPlayer opponent: opponents ) {
+            team.add(opponent.player);
+            this.remove(opponent);
+        }
+        return team;
+    }
+
+    // Walks down and up the index from the player at once, taking whichever neighbour is nearer: O(log n) to find the
+    // player's place, then one step per opponent
+    private List<QueuedPlayer> nearestOpponents(QueuedPlayer queuedPlayer, int count, int window) {
+        List<QueuedPlayer> opponents = new ArrayList<>(count);
+        Iterator<QueuedPlayer> below = this.ratingIndex.headSet(queuedPlayer, false).descendingIterator();
+        Iterator<QueuedPlayer> above = this.ratingIndex.tailSet(queuedPlayer, false).iterator();
+        QueuedPlayer nextBelow = nextWithin(below, queuedPlayer.rating, window);
+        QueuedPlayer nextAbove = nextWithin(above, queuedPlayer.rating, window);
+        while( opponents.size() < count && (nextBelow != null || nextAbove != null) ) {
+            if( nextAbove == null || (nextBelow != null && queuedPlayer.rating - nextBelow.rating <= nextAbove.rating - queuedPlayer.rating) ) {
+                opponents.add(nextBelow);
+                nextBelow = nextWithin(below, queuedPlayer.rating, window);
+            } else {
+                opponents.add(nextAbove);
+                nextAbove = nextWithin(above, queuedPlayer.rating, window);
+            }
+        }
+        return opponents;
+    }
+
+    // Returns null once the neighbours on this side are out of the window
+    private static QueuedPlayer nextWithin(Iterator<QueuedPlayer> neighbours, int rating, int window) {
+        if( !neighbours.hasNext() ) {
+            return null;
+        }
+        QueuedPlayer neighbour = neighbours.next();
+        return Math.abs((long) neighbour.rating - rating) <= window ? neighbour : null;
+    }
+
+    private void remove(QueuedPlayer queuedPlayer) {
+        this.ratingIndex.remove(queuedPlayer);
+        this.queuedPlayers.remove(queuedPlayer.player, queuedPlayer);
+    }
+
+    // The rating is read once when the player joins, it only changes at the end of a game
+    private static class QueuedPlayer implements Comparable<QueuedPlayer> {
+        private final Player player;
+        private final int rating;
+        private final long arrival;
+        private final long enqueuedAt;
+
+        private QueuedPlayer(Player player, int rating, long arrival, long enqueuedAt) {
+            this.player = player;
+            this.rating = rating;
+            this.arrival = arrival;
+            this.enqueuedAt = enqueuedAt;
+        }
+
+        @Override
+        public int compareTo(QueuedPlayer other) {
+            if( this.rating != other.rating ) {
+                return Integer.compare(this.rating, other.rating);
+            }
+            return Long.compare(this.arrival, other.arrival);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+// Session tokens and the index of the logged in sessions by token. A token is 128 random bits, always 22 characters of
+// URL safe Base64, issued once a player authenticated. A token expires once its session was not heard from for longer
+// than the timeout, even before the heartbeat monitor gets to evicting it, and expired tokens are swept out of the index.
+public class SessionTokens {
+    public static final int TOKEN_BYTES = 16;
+    public static final int TOKEN_LENGTH = 22;
+
+    // One generator per thread, seeded once when the thread issues its first token. Creating one per token costs more
+    // than the token itself, and seeding it may wait for entropy on some hosts.
+    private static final ThreadLocal<SecureRandom> secureRandom = ThreadLocal.withInitial(SecureRandom::new);
+    private static final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+    private final ConcurrentMap<String, Player> sessionsByToken = new ConcurrentHashMap<>();
+    private final long timeoutNanos;
+
+    public SessionTokens(long timeoutNanos) {
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    public static String generate() {
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        secureRandom.get().nextBytes(tokenBytes);
+        return encoder.encodeToString(tokenBytes);
+    }
+
+    // Gives the player a new token and indexes its session under it
+    public String issue(Player player) {
+        String token = generate();
+        // Two equal tokens in 128 random bits never happen in practice, a new one is drawn all the same
+        while( this.sessionsByToken.putIfAbsent(token, player) != null ) {
+            token = generate();
+        }
+        player.setToken(token);
+        return token;
+    }
+
+    // Returns null if the token is malformed, unknown, revoked or expired
+    public Player find(String token) {
+        if( token.length() != TOKEN_LENGTH ) {
+            return null;
+        }
+        Player player = this.sessionsByToken.get(token);
+        if( player == null ) {
+            return null;
+        }
+        if( this.isExpired(player, System.nanoTime()) ) {
+            this.sessionsByToken.remove(token, player);
+            return null;
+        }
+        return player;
+    }
+
+    public void revoke(Player player) {
+        String token = player.getToken();
+        if( token != null ) {
+            this.sessionsByToken.remove(token, player);
+        }
+    }
+
+    // One pass over the index against the same clock reading, returns the number of tokens removed
+    public int expire(long now) {
+        int numberOfExpiredTokens = 0;
+        for( Map.Entry<String, Player> entry: this.sessionsByToken.entrySet() ) {
+            if( this.isExpired(entry.getValue(), now) && this.sessionsByToken.remove(entry.getKey(), entry.getValue()) ) {
+                numberOfExpiredTokens++;
+            }
+        }
+        return numberOfExpiredTokens;
+    }
+
+    private boolean isExpired(Player player, long now) {
+        return now - player.getLastSeenAt() > this.timeoutNanos;
+    }
+
+    // Getters
+    public int getNumberOfSessions() {
+        return this.sessionsByToken.size();
+    }
+}
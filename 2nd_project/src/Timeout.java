@@ -0,0 +1,48 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// A task scheduled on the timer wheel, it either expires (and its task runs) or is cancelled, never both
+public class Timeout {
+    private static final int PENDING = 0;
+    private static final int CANCELLED = 1;
+    private static final int EXPIRED = 2;
+
+    private final long deadline;
+    private final Runnable task;
+    private final AtomicInteger state = new AtomicInteger(PENDING);
+    // Only touched by the wheel thread, full turns of the wheel left before the timeout is due
+    private long remainingRounds = 0;
+
+    public Timeout(long deadline, Runnable task) {
+        this.deadline = deadline;
+        this.task = task;
+    }
+
+    // Returns false if the task already ran or is running
+    public boolean cancel() {
+        return this.state.compareAndSet(PENDING, CANCELLED);
+    }
+
+    // Returns false if the timeout was cancelled first
+    protected boolean expire() {
+        return this.state.compareAndSet(PENDING, EXPIRED);
+    }
+
+    // Getters
+    public long getDeadline() {
+        return this.deadline;
+    }
+    public Runnable getTask() {
+        return this.task;
+    }
+    public boolean isCancelled() {
+        return this.state.get() == CANCELLED;
+    }
+    protected long getRemainingRounds() {
+        return this.remainingRounds;
+    }
+
+    // Setters
+    protected void setRemainingRounds(long remainingRounds) {
+        this.remainingRounds = remainingRounds;
+    }
+}
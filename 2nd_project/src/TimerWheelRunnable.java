@@ -0,0 +1,123 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Hashed timing wheel: one thread keeps every pending timeout of the server (turns, end game menus, queue waits).
+// Scheduling and cancelling cost the same with a million pending timeouts as with one, and no timeout has a thread or
+// a sleep of its own. In exchange a timeout fires up to one tick late.
+public class TimerWheelRunnable implements Runnable {
+    private final long tickNanos;
+    private final int mask;
+    // Bucket i holds the timeouts due at the ticks i, i + wheel size, i + 2 * wheel size...
+    private final List<ArrayDeque<Timeout>> buckets = new ArrayList<>();
+    // Timeouts scheduled since the last tick, any thread adds to it and the wheel thread moves them to their bucket
+    private final Queue<Timeout> scheduledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger numberOfPendingTimeouts = new AtomicInteger(0);
+    private final long startTime = System.nanoTime();
+    private long tick = 0;
+    private boolean isStopRequested = false;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // The wheel size must be a power of two
+    public TimerWheelRunnable(long tickMillis, int wheelSize) {
+        if( Integer.bitCount(wheelSize) != 1 ) {
+            throw new IllegalArgumentException("Timer wheel size must be a power of two: " + wheelSize + ".");
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = wheelSize - 1;
+        for( int i = 0; i < wheelSize; i++ ) {
+            this.buckets.add(new ArrayDeque<>());
+        }
+    }
+
+    public void requestStop() {
+        try {
+            lock.lock();
+            this.isStopRequested = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean getIsStopRequested() {
+        try {
+            lock.lock();
+            return this.isStopRequested;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Runs the task on the wheel thread once the delay passed, unless the returned timeout is cancelled first. The task
+    // must not block, anything longer is handed to the thread that owns the work (an event loop, an executor).
+    public Timeout schedule(long delayMillis, Runnable task) {
+        Timeout timeout = new Timeout(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), task);
+        this.numberOfPendingTimeouts.incrementAndGet();
+        this.scheduledTimeouts.add(timeout);
+        return timeout;
+    }
+
+    // Includes cancelled timeouts the wheel did not reach yet
+    public int getNumberOfPendingTimeouts() {
+        return this.numberOfPendingTimeouts.get();
+    }
+
+    @Override
+    public void run() {
+        Log.info(Thread.currentThread().getName() + " started.");
+        while( !this.getIsStopRequested() ) {
+            // The only sleep for every timeout of the server
+            long sleepNanos = this.startTime + (this.tick + 1) * this.tickNanos - System.nanoTime();
+            if( sleepNanos > 0 ) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            this.tick++;
+            this.placeScheduledTimeouts();
+            this.expireTimeouts(this.buckets.get((int) (this.tick & this.mask)));
+        }
+        Log.info(Thread.currentThread().getName() + " stopped.");
+    }
+
+    private void placeScheduledTimeouts() {
+        Timeout timeout;
+        while( (timeout = this.scheduledTimeouts.poll()) != null ) {
+            if( timeout.isCancelled() ) {
+                this.numberOfPendingTimeouts.decrementAndGet();
+                continue;
+            }
+            // Rounded up so a timeout never fires early, a timeout already due fires on this tick
+            long dueTick = Math.max(this.tick, -Math.floorDiv(this.startTime - timeout.getDeadline(), this.tickNanos));
+            timeout.setRemainingRounds((dueTick - this.tick) / this.buckets.size());
+            this.buckets.get((int) (dueTick & this.mask)).add(timeout);
+        }
+    }
+
+    private void expireTimeouts(ArrayDeque<Timeout> bucket) {
+        for( int i = bucket.size(); i > 0; i-- ) {
+            Timeout timeout = bucket.poll();
+            if( timeout.getRemainingRounds() > 0 && !timeout.isCancelled() ) {
+                timeout.setRemainingRounds(timeout.getRemainingRounds() - 1);
+                bucket.add(timeout);
+                continue;
+            }
+            this.numberOfPendingTimeouts.decrementAndGet();
+            if( timeout.expire() ) {
+                try {
+                    timeout.getTask().run();
+                } catch(RuntimeException e) {
+                    // One broken task must not stop the others
+                    Log.error("A timeout task failed.", e);
+                }
+            }
+        }
+    }
+}